@@ -0,0 +1,103 @@
+package group14.benchmarks;
+
+import genius.core.AgentID;
+import genius.core.Bid;
+import genius.core.Deadline;
+import genius.core.DeadlineType;
+import genius.core.Domain;
+import genius.core.actions.Accept;
+import genius.core.actions.Action;
+import genius.core.actions.Offer;
+import genius.core.parties.NegotiationInfo;
+import genius.core.timeline.DiscreteTimeline;
+import genius.core.utility.AdditiveUtilitySpace;
+import group14.Agent14;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a whole turn of the agent once it is conceding towards the Nash point, which is when
+ * AgentSmithBiddingStrategy.getNextBid picks the offers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BiddingStrategyBenchmark {
+
+    private static final int BATCH = 1024;
+    private static final int ROUNDS = 1000;
+
+    @Param({"2", "4", "6", "7"}) // 10^2 to 10^7 bids
+    public int issues;
+
+    private Agent14 agent;
+    private AgentID opponent = new AgentID("Opponent");
+    private List<Class<? extends Action>> actions = new ArrayList<>();
+    private Bid[] bids;
+    private int next;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        SyntheticDomainGenerator generator = new SyntheticDomainGenerator(14);
+        generator.setIssueCount(issues);
+        SyntheticDomainGenerator.Scenario scenario = generator.generate();
+        Domain domain = scenario.getDomain();
+        DiscreteTimeline timeline = new DiscreteTimeline(ROUNDS);
+        // Half way through, after the Nash offers and before the final stretch
+        for (int round = 0; round < ROUNDS / 2; round++) {
+            timeline.increment();
+        }
+        agent = new Agent14();
+        agent.init(new NegotiationInfo(scenario.getAgentUtilitySpace(), null,
+                new Deadline(ROUNDS, DeadlineType.ROUND), timeline, 14, new AgentID("Agent14"), null));
+        actions.add(Accept.class);
+        actions.add(Offer.class);
+
+        // The opponent has conflicting preferences and only offers bids good for itself, so its offers are rarely
+        // accepted and the agent keeps bidding
+        AdditiveUtilitySpace opponentUtilitySpace = scenario.getOpponentUtilitySpace();
+        Random random = new Random(14);
+        bids = new Bid[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            bids[i] = domain.getRandomBid(random);
+            for (int candidate = 0; candidate < 8; candidate++) {
+                Bid bid = domain.getRandomBid(random);
+                if (opponentUtilitySpace.getUtility(bid) > opponentUtilitySpace.getUtility(bids[i])) {
+                    bids[i] = bid;
+                }
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            turn();
+        }
+        // Give the background Nash point search time to publish an estimate
+        Thread.sleep(1000);
+    }
+
+    @Benchmark
+    public Action turn() {
+        agent.receiveMessage(opponent, new Offer(opponent, bids[next]));
+        next = (next + 1) & (BATCH - 1);
+        return agent.chooseAction(actions);
+    }
+
+    /**
+     * End the negotiation so the agent's background Nash point search stops between trials
+     */
+    @TearDown
+    public void tearDown() {
+        agent.negotiationEnded(null);
+    }
+}
@@ -0,0 +1,69 @@
+package group14.benchmarks;
+
+import genius.core.Bid;
+import genius.core.Domain;
+import group14.AgentSmithOpponentModel;
+import group14.BidCodec;
+import group14.CompiledUtilityEvaluator;
+import group14.NashPointGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of rescoring the bid space and finding the Nash point after the opponent model receives a bid
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NashPointBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"2", "4", "6", "7"}) // 10^2 to 10^7 bids
+    public int issues;
+
+    private AgentSmithOpponentModel opponentModel;
+    private NashPointGenerator nashPointGenerator;
+    private Bid[] bids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticDomainGenerator generator = new SyntheticDomainGenerator(14);
+        generator.setIssueCount(issues);
+        SyntheticDomainGenerator.Scenario scenario = generator.generate();
+        Domain domain = scenario.getDomain();
+        BidCodec codec = new BidCodec(domain);
+        CompiledUtilityEvaluator agentUtility = new CompiledUtilityEvaluator(codec, scenario.getAgentUtilitySpace());
+        opponentModel = new AgentSmithOpponentModel(codec);
+        Random random = new Random(14);
+        bids = new Bid[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            bids[i] = domain.getRandomBid(random);
+        }
+        for (int i = 0; i < 20; i++) {
+            opponentModel.recievedBid(bids[i]);
+        }
+        nashPointGenerator = new NashPointGenerator(codec, agentUtility, opponentModel);
+        // The first update builds the bid space, which is done once per negotiation
+        nashPointGenerator.updateBidSpace(opponentModel.snapshot());
+        nashPointGenerator.getNashPoint();
+    }
+
+    @Benchmark
+    public Bid updateBidSpaceAndGetNashPoint() {
+        opponentModel.recievedBid(bids[next]);
+        next = (next + 1) & (BATCH - 1);
+        nashPointGenerator.updateBidSpace(opponentModel.snapshot());
+        return nashPointGenerator.getNashPoint();
+    }
+}
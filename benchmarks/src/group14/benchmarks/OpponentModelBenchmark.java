@@ -0,0 +1,73 @@
+package group14.benchmarks;
+
+import genius.core.Bid;
+import genius.core.Domain;
+import group14.AgentSmithOpponentModel;
+import group14.BidCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of updating the opponent model with a received bid, and of scoring bids with it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OpponentModelBenchmark {
+
+    private static final int BATCH = 1024; // Bids cycled through, so the benchmark is not one bid over and over
+
+    @Param({"2", "4", "6", "7", "8"}) // 10^2 to 10^8 bids
+    public int issues;
+
+    private AgentSmithOpponentModel opponentModel;
+    private Bid[] bids;
+    private long[] ordinals;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticDomainGenerator generator = new SyntheticDomainGenerator(14);
+        generator.setIssueCount(issues);
+        Domain domain = generator.generateDomain();
+        BidCodec codec = new BidCodec(domain);
+        opponentModel = new AgentSmithOpponentModel(codec);
+        Random random = new Random(14);
+        bids = new Bid[BATCH];
+        ordinals = new long[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            bids[i] = domain.getRandomBid(random);
+            ordinals[i] = codec.encode(bids[i]);
+        }
+        // A model which has seen some of the negotiation, as it would be when scoring
+        for (int i = 0; i < 100; i++) {
+            opponentModel.recievedBid(bids[i]);
+        }
+    }
+
+    @Benchmark
+    public void recievedBid() {
+        opponentModel.recievedBid(bids[next]);
+        next = (next + 1) & (BATCH - 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double opponentBidUtility() {
+        double total = 0;
+        for (int i = 0; i < BATCH; i++) {
+            total += opponentModel.opponentBidUtility(ordinals[i]);
+        }
+        return total;
+    }
+}
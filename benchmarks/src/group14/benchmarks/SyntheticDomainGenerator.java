@@ -0,0 +1,204 @@
+package group14.benchmarks;
+
+import genius.core.Domain;
+import genius.core.DomainImpl;
+import genius.core.issue.IssueDiscrete;
+import genius.core.issue.Objective;
+import genius.core.uncertainty.AdditiveUtilitySpaceFactory;
+import genius.core.utility.AdditiveUtilitySpace;
+import group14.BidSampler;
+
+import java.util.Random;
+
+/**
+ * Builds domains and utility spaces in memory, for benchmarks and load tests at sizes no XML domain reaches
+ * Kept with the benchmarks so it is not shipped in the agent
+ * The same seed and settings always give the same domain and profiles
+ */
+public class SyntheticDomainGenerator {
+
+    /**
+     * How the opponent's preferences relate to the agent's
+     */
+    public enum OpponentCorrelation {
+        CONFLICTING, // The opponent ranks every issue's values in reverse, with its own weights
+        INDEPENDENT, // The opponent's weights and values are drawn separately
+        ALIGNED // The opponent has the same preferences as the agent
+    }
+
+    /**
+     * A generated domain with a utility space for the agent and one for the opponent
+     */
+    public static final class Scenario {
+
+        private final Domain domain;
+        private final AdditiveUtilitySpace agentUtilitySpace;
+        private final AdditiveUtilitySpace opponentUtilitySpace;
+
+        private Scenario(Domain domain, AdditiveUtilitySpace agentUtilitySpace, AdditiveUtilitySpace opponentUtilitySpace) {
+            this.domain = domain;
+            this.agentUtilitySpace = agentUtilitySpace;
+            this.opponentUtilitySpace = opponentUtilitySpace;
+        }
+
+        public Domain getDomain() {
+            return domain;
+        }
+
+        public AdditiveUtilitySpace getAgentUtilitySpace() {
+            return agentUtilitySpace;
+        }
+
+        public AdditiveUtilitySpace getOpponentUtilitySpace() {
+            return opponentUtilitySpace;
+        }
+    }
+
+    private final long seed;
+    private int issueCount = 4;
+    private int valuesPerIssue = 10;
+    private double weightSkew = 0; // 0 weights the issues equally
+    private OpponentCorrelation opponentCorrelation = OpponentCorrelation.CONFLICTING;
+
+    /**
+     * @param seed seed for the weights and values of the utility spaces
+     */
+    public SyntheticDomainGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param issueCount number of issues in the domain
+     */
+    public void setIssueCount(int issueCount) {
+        this.issueCount = issueCount;
+    }
+
+    /**
+     * @param valuesPerIssue number of values of each issue, the domain has valuesPerIssue^issueCount bids
+     */
+    public void setValuesPerIssue(int valuesPerIssue) {
+        this.valuesPerIssue = valuesPerIssue;
+    }
+
+    /**
+     * Set how unevenly the issues are weighted
+     * The n-th most important issue is weighted in proportion to n^-weightSkew before the weights are normalised
+     * @param weightSkew 0 for equal weights, higher for a few issues to matter most
+     */
+    public void setWeightSkew(double weightSkew) {
+        this.weightSkew = weightSkew;
+    }
+
+    public void setOpponentCorrelation(OpponentCorrelation opponentCorrelation) {
+        this.opponentCorrelation = opponentCorrelation;
+    }
+
+    /**
+     * A method to generate a domain with utility spaces for the agent and the opponent
+     * @return the generated scenario
+     */
+    public Scenario generate() {
+        Random random = new Random(seed);
+        Domain domain = generateDomain();
+
+        // Each issue gets one of the skewed weights, and its values are spread evenly from 0 to 1 in a random order
+        double[] agentWeights = shuffledWeights(random);
+        double[][] agentValues = new double[issueCount][];
+        for (int i = 0; i < issueCount; i++) {
+            agentValues[i] = shuffledValues(random);
+        }
+
+        double[] opponentWeights;
+        double[][] opponentValues = new double[issueCount][];
+        switch (opponentCorrelation) {
+            case CONFLICTING:
+                // Weights are drawn separately, so the opponent trades issues differently and the outcomes
+                // have a real Pareto frontier rather than every bid being Pareto optimal
+                opponentWeights = shuffledWeights(random);
+                for (int i = 0; i < issueCount; i++) {
+                    opponentValues[i] = new double[valuesPerIssue];
+                    for (int v = 0; v < valuesPerIssue; v++) {
+                        opponentValues[i][v] = valuesPerIssue == 1 ? 1 : 1 - agentValues[i][v];
+                    }
+                }
+                break;
+            case INDEPENDENT:
+                opponentWeights = shuffledWeights(random);
+                for (int i = 0; i < issueCount; i++) {
+                    opponentValues[i] = shuffledValues(random);
+                }
+                break;
+            default:
+                opponentWeights = agentWeights;
+                opponentValues = agentValues;
+                break;
+        }
+
+        return new Scenario(domain, generateUtilitySpace(domain, agentWeights, agentValues),
+                generateUtilitySpace(domain, opponentWeights, opponentValues));
+    }
+
+    /**
+     * A method to build the domain alone, which does not depend on the seed
+     * @return a domain of issueCount issues with valuesPerIssue values each
+     */
+    public Domain generateDomain() {
+        Objective root = new Objective(null, "root", 0);
+        for (int i = 1; i <= issueCount; i++) {
+            String[] values = new String[valuesPerIssue];
+            for (int v = 0; v < valuesPerIssue; v++) {
+                values[v] = "value" + v;
+            }
+            root.addChild(new IssueDiscrete("issue" + i, i, values, root));
+        }
+        DomainImpl domain = new DomainImpl();
+        domain.setObjectivesRoot(root);
+        return domain;
+    }
+
+    private AdditiveUtilitySpace generateUtilitySpace(Domain domain, double[] weights, double[][] values) {
+        AdditiveUtilitySpaceFactory factory = new AdditiveUtilitySpaceFactory(domain);
+        int i = 0;
+        for (IssueDiscrete issue : factory.getIssues()) {
+            for (int v = 0; v < issue.getNumberOfValues(); v++) {
+                factory.setUtility(issue, issue.getValue(v), values[i][v]);
+            }
+            factory.getUtilitySpace().setWeight(issue, weights[i]);
+            i++;
+        }
+        // The best value of every issue is 1, so this only makes the weights sum to 1
+        factory.normalizeWeightsByMaxValues();
+        return factory.getUtilitySpace();
+    }
+
+    private double[] shuffledWeights(Random random) {
+        long[] order = shuffledOrder(issueCount, random);
+        double[] weights = new double[issueCount];
+        for (int i = 0; i < issueCount; i++) {
+            weights[i] = Math.pow(order[i] + 1, -weightSkew);
+        }
+        return weights;
+    }
+
+    private double[] shuffledValues(Random random) {
+        long[] order = shuffledOrder(valuesPerIssue, random);
+        double[] values = new double[valuesPerIssue];
+        for (int v = 0; v < valuesPerIssue; v++) {
+            values[v] = valuesPerIssue == 1 ? 1 : (double) order[v] / (valuesPerIssue - 1);
+        }
+        return values;
+    }
+
+    /**
+     * @return the numbers 0 to size - 1 in a random order
+     */
+    private static long[] shuffledOrder(int size, Random random) {
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        BidSampler.shuffle(order, random);
+        return order;
+    }
+}
@@ -0,0 +1,64 @@
+package group14.benchmarks;
+
+import genius.core.Bid;
+import genius.core.Domain;
+import genius.core.uncertainty.BidRanking;
+import genius.core.utility.AdditiveUtilitySpace;
+import group14.AgentSmithUtilityEstimator;
+import group14.BidCodec;
+import group14.BidSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to estimate the agent's utility space from user model rankings of different sizes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UtilityEstimatorBenchmark {
+
+    private static final int ISSUES = 6; // 10^6 bids, enough for the biggest ranking to be a small sample
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rankingSize;
+
+    private Domain domain;
+    private BidCodec codec;
+    private BidRanking ranking;
+
+    @Setup
+    public void setUp() {
+        SyntheticDomainGenerator generator = new SyntheticDomainGenerator(14);
+        generator.setIssueCount(ISSUES);
+        SyntheticDomainGenerator.Scenario scenario = generator.generate();
+        domain = scenario.getDomain();
+        codec = new BidCodec(domain);
+        AdditiveUtilitySpace realUtilitySpace = scenario.getAgentUtilitySpace();
+        List<Bid> bids = new ArrayList<>();
+        for (long ordinal : BidSampler.sampleWithoutReplacement(codec.size(), rankingSize, new Random(14))) {
+            bids.add(codec.decode(ordinal));
+        }
+        bids.sort(Comparator.comparingDouble(realUtilitySpace::getUtility));
+        ranking = new BidRanking(bids);
+    }
+
+    @Benchmark
+    public AdditiveUtilitySpace estimateUsingBidRanks() {
+        AgentSmithUtilityEstimator estimator = new AgentSmithUtilityEstimator(domain, codec);
+        estimator.estimateUsingBidRanks(ranking);
+        return estimator.getUtilitySpace();
+    }
+}
@@ -8,16 +8,18 @@ import genius.core.actions.Action;
 import genius.core.actions.Offer;
 import genius.core.parties.AbstractNegotiationParty;
 import genius.core.parties.NegotiationInfo;
-import genius.core.uncertainty.BidRanking;
 import genius.core.uncertainty.ExperimentalUserModel;
-import genius.core.uncertainty.UserModel;
 import genius.core.utility.AbstractUtilitySpace;
+import genius.core.utility.AdditiveUtilitySpace;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * TODO: Update Agent Smith description
@@ -39,20 +41,58 @@ public class Agent14 extends AbstractNegotiationParty {
     private AgentSmithOpponentModel opponentModel;
     private AgentSmithAcceptanceStrategy acceptanceStrategy;
     private NegotiationInfo info;
+    private BidCodec bidCodec; // Ordinal encoding of every bid in the domain
+    private CompiledUtilityEvaluator compiledUtility; // Array based copy of the estimated utility space
+    private SortedBidIndex sortedBidIndex; // Bids sorted by estimated utility
+    private UtilityCache utilityCache; // Utilities already worked out, shared by all the components
     private Bid lastReceivedOffer; // Current offer on the table
+    private double lastReceivedOfferUtility; // Estimated utility of the current offer
     private Bid myLastOffer; // Latest offer made by the agent
     private double utilityThreshold;
     // Initial idea - Threshold decreased linearly to begin with then try exponential
     // Trying to set threshold to Nash point instead
     private double proportionBidsToEstimate = 0.5;
+    private int maxBidsToEstimate = 50000; // Cap on the bids ranked when there is no user model
+    private long estimationTimeBudget = 500; // Milliseconds spent scoring sampled bids when there is no user model
+    // Fit the utility space by pairwise ranking regression instead of scoring values by their mean rank
+    private boolean useRegressionEstimator = false;
+    private long regressionTimeBudget = 300; // Milliseconds spent fitting the regression estimator
+    // Measure the estimate against the real utility space when it is known - for offline experiments only, as it
+    // adds to init time and reads the real utility space, which the agent should not use under uncertainty
+    private boolean evaluateEstimator = false;
+    private long estimationTime;
+    private EstimatorQualityMetrics estimatorQuality;
     private Bid bestOfferSoFar = null; // Best bid offered so far from opponent
+    private double bestOfferSoFarUtility;
+    // Threads used to estimate the utility space and score the bid space - 1 by default as tournaments already
+    // run sessions concurrently
+    private int scoringParallelism = 1;
+    // Start working out the next offer as soon as an offer is received, on another thread
+    // Off by default - under SAOP chooseAction follows receiveMessage straight away, so there is little to overlap
+    private boolean pipelineBids = false;
+    private ExecutorService bidPipeline;
+    private Future<Bid> speculativeBid; // Next offer being computed ahead of time
+    private double acceptanceThreshold; // Utility threshold from before the speculative bid was started
 
     @Override
     public void init(NegotiationInfo info) {
         super.init(info);
         this.info = info;
+        // With a user model, super.init has already called estimateUtilitySpace, which creates the codec
+        if (bidCodec == null) {
+            bidCodec = new BidCodec(getDomain());
+        }
         // This is where the utility estimation is done - at the start only
+        long estimationStart = System.nanoTime();
         utilitySpace = estimateUtilitySpace();
+        estimationTime = (System.nanoTime() - estimationStart) / 1000000L;
+        // The estimated space is additive and never changes after this, so it can be flattened once
+        compiledUtility = new CompiledUtilityEvaluator(bidCodec, (AdditiveUtilitySpace) utilitySpace);
+        if (evaluateEstimator) {
+            estimatorQuality = evaluateEstimatedUtilitySpace();
+        }
+        sortedBidIndex = new SortedBidIndex(compiledUtility, new Random());
+        utilityCache = new UtilityCache(compiledUtility);
 
         try {
             // Setting utility threshold as high as possible to begin with
@@ -65,7 +105,7 @@ public class Agent14 extends AbstractNegotiationParty {
             utilityThreshold = 0.95;
         }
 
-        opponentModel = new AgentSmithOpponentModel(this.getDomain());
+        opponentModel = new AgentSmithOpponentModel(bidCodec);
         acceptanceStrategy = new AgentSmithAcceptanceStrategy(this);
         biddingStrategy = new AgentSmithBiddingStrategy(this);
     }
@@ -82,48 +122,142 @@ public class Agent14 extends AbstractNegotiationParty {
         // Using Stacked Alternating Offers Protocol so only actions are Accept, Offer and EndNegotiation
         // EndNegotiation not used - Reservation value is zero so our agent prefers to accept any deal rather than end the negotiation
 
-        if (acceptanceStrategy.accept(lastReceivedOffer)) {
+        // If the next offer is being computed ahead of time, the acceptance check is made first so it never
+        // waits for the pipeline - it uses the offer's utility and the threshold from before that computation
+        // started, so it reads nothing the pipeline thread may be changing
+        // A computation left running by an accept is collected when the next message arrives
+        boolean pipelined = speculativeBid != null;
+        boolean accept = pipelined
+                ? acceptanceStrategy.accept(lastReceivedOfferUtility, acceptanceThreshold)
+                : acceptanceStrategy.accept(lastReceivedOffer, utilityThreshold);
+
+        if (accept) {
             return new Accept(this.getPartyId(), lastReceivedOffer);
         } else {
-            try {
-                myLastOffer = biddingStrategy.getBid();
-            } catch(Exception e) {
-                e.printStackTrace();
-                // Fallback in case exception occurred getting bid, always offer something
-                myLastOffer = generateRandomBid();
+            if (pipelined) {
+                myLastOffer = collectSpeculativeBid();
+            } else {
+                try {
+                    myLastOffer = biddingStrategy.getBid();
+                } catch(Exception e) {
+                    e.printStackTrace();
+                    // Fallback in case exception occurred getting bid, always offer something
+                    myLastOffer = generateRandomBid();
+                }
             }
             // Double fallback in case no exception when generating bid but bid returned still null, always offer something
             if (myLastOffer == null) {
                 myLastOffer = generateRandomBid();
             }
+            biddingStrategy.offered(myLastOffer);
             return new Offer(this.getPartyId(), myLastOffer);
         }
     }
 
+    /**
+     * Start computing the agent's next offer on the pipeline thread
+     */
+    private void startSpeculativeBid() {
+        if (bidPipeline == null) {
+            bidPipeline = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "AgentSmith-BidPipeline");
+                // The pipeline should never keep the negotiation running
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        acceptanceThreshold = utilityThreshold;
+        speculativeBid = bidPipeline.submit(biddingStrategy::getBid);
+    }
+
+    /**
+     * Wait for the offer being computed ahead of time
+     * Once this returns, the pipeline thread is no longer using any of the agent's state
+     * @return the computed offer, or null if computing it failed
+     */
+    private Bid collectSpeculativeBid() {
+        try {
+            return speculativeBid.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            speculativeBid = null;
+        }
+    }
+
     @Override
     public AbstractUtilitySpace estimateUtilitySpace() {
         Domain domain = getDomain();
-        AgentSmithUtilityEstimator factory = new AgentSmithUtilityEstimator(domain);
-        BidRanking bidRanking;
+        // Genius calls this from inside super.init when there is a user model, before init has made the codec
+        if (bidCodec == null) {
+            bidCodec = new BidCodec(domain);
+        }
+        // Without a user model the estimate is fitted to a ranking of sampled bids
+        long[] sampledRanking = userModel == null ? sampleRanking() : null;
+        if (useRegressionEstimator) {
+            PairwiseRankingEstimator factory = new PairwiseRankingEstimator(domain, bidCodec);
+            factory.setTimeBudget(regressionTimeBudget);
+            if (userModel != null) {
+                factory.estimateUsingBidRanks(userModel.getBidRanking());
+            } else {
+                factory.estimateUsingOrdinalRanking(sampledRanking, sampledRanking.length);
+            }
+            return factory.getUtilitySpace();
+        }
+
+        AgentSmithUtilityEstimator factory = new AgentSmithUtilityEstimator(domain, bidCodec);
+        factory.setParallelism(scoringParallelism);
         if(userModel != null) {
-            bidRanking = userModel.getBidRanking();
+            factory.estimateUsingBidRanks(userModel.getBidRanking());
         } else {
-            List<Bid> bidList = new ArrayList<>();
-
-            Random r = new Random();
-            for (int i = 0; i < ((double) domain.getNumberOfPossibleBids()) * proportionBidsToEstimate; i++) {
-                bidList.add(domain.getRandomBid(r));
-            }
-            bidList.sort(Comparator.comparingDouble(e -> utilitySpace.getUtility(e)));
-            bidRanking = new BidRanking(bidList);
-            userModel = new UserModel(bidRanking);
+            factory.estimateUsingOrdinalRanking(sampledRanking, sampledRanking.length);
         }
-        factory.estimateUsingBidRanks(bidRanking);
         AbstractUtilitySpace us = factory.getUtilitySpace();
 
         return us;
     }
 
+    /**
+     * Rank sampled bids with the real utility space, used when there is no user model
+     * Distinct bids are sampled as ordinals, scored once and ranked without building a list of Bid objects
+     * The sample is capped in size and stops growing once the time budget for scoring it is spent
+     * @return ordinals of the ranked bids, worst bid first
+     */
+    private long[] sampleRanking() {
+        int sampleSize = (int) Math.max(1, Math.min(maxBidsToEstimate,
+                (long) (((double) bidCodec.size()) * proportionBidsToEstimate)));
+        Random random = new Random();
+        long[] sample = BidSampler.sampleWithoutReplacement(bidCodec.size(), sampleSize, random);
+        // The sample comes back in ordinal order, so it is shuffled before scoring - if the time budget cuts
+        // scoring short, the bids scored are still spread over the whole domain rather than its low-ordinal corner
+        BidSampler.shuffle(sample, random);
+
+        // Sort keys are worked out once per bid rather than on every comparison
+        long deadline = System.nanoTime() + estimationTimeBudget * 1000000L;
+        double[] keys = new double[sample.length];
+        int scored = 0;
+        while (scored < sample.length) {
+            keys[scored] = utilitySpace.getUtility(bidCodec.decode(sample[scored]));
+            scored++;
+            if (scored % 1024 == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+        }
+
+        int[] order = new int[scored];
+        for (int i = 0; i < scored; i++) {
+            order[i] = i;
+        }
+        // Worst bid first, as in a BidRanking
+        IndexSort.sort(order, 0, scored, (a, b) -> Double.compare(keys[a], keys[b]));
+        long[] ranking = new long[scored];
+        for (int i = 0; i < scored; i++) {
+            ranking[i] = sample[order[i]];
+        }
+        return ranking;
+    }
+
     /**
      * This method is called to inform the party that another NegotiationParty chose an Action.
      * @param sender
@@ -132,23 +266,61 @@ public class Agent14 extends AbstractNegotiationParty {
     @Override
     public void receiveMessage(AgentID sender, Action act) {
         super.receiveMessage(sender, act);
+        // Any offer computed for an earlier message is out of date, and must finish before the model changes
+        if (speculativeBid != null) {
+            collectSpeculativeBid();
+        }
 
         if (act instanceof Offer) { // sender is making an offer
             Offer offer = (Offer) act;
             // storing last received offer
             lastReceivedOffer = offer.getBid();
             opponentModel.recievedBid(offer.getBid());
+            // Nash point is recomputed in the background so it is ready by the time it is needed
+            biddingStrategy.opponentModelUpdated();
             // Storing the best bid offered by the opponent (i.e. the one with highest utility for us)
-            if (bestOfferSoFar == null) {
+            // The utility is cached here so the acceptance strategy does not need to work it out again
+            double offerUtility = this.getUtility(lastReceivedOffer);
+            lastReceivedOfferUtility = offerUtility;
+            if (bestOfferSoFar == null || offerUtility > bestOfferSoFarUtility) {
                 bestOfferSoFar = lastReceivedOffer;
-            } else {
-                if (this.getUtility(lastReceivedOffer) > this.getUtility(bestOfferSoFar)) {
-                    bestOfferSoFar = lastReceivedOffer;
-                }
+                bestOfferSoFarUtility = offerUtility;
+            }
+            if (pipelineBids) {
+                startSpeculativeBid();
             }
         }
     }
 
+    /**
+     * Release the threads the agent started, as Genius creates a new agent for every session
+     * @param acceptedBid the agreed bid, or null if there was no agreement
+     * @return results to store
+     */
+    @Override
+    public Map<String, String> negotiationEnded(Bid acceptedBid) {
+        if (bidPipeline != null) {
+            bidPipeline.shutdownNow();
+        }
+        if (biddingStrategy != null) {
+            biddingStrategy.close();
+        }
+        return super.negotiationEnded(acceptedBid);
+    }
+
+    /**
+     * Get the estimated utility of a bid using the compiled utility space
+     * @param bid the bid to evaluate
+     * @return estimated utility of the bid
+     */
+    @Override
+    public double getUtility(Bid bid) {
+        if (bid == null || utilityCache == null) {
+            return super.getUtility(bid);
+        }
+        return utilityCache.getOwnUtility(bidCodec.encode(bid));
+    }
+
     /**
      * A human-readable description for this party.
      * @return agent description
@@ -198,6 +370,14 @@ public class Agent14 extends AbstractNegotiationParty {
         this.utilityThreshold = threshold;
     }
 
+    /**
+     * Get the number of threads the agent may use to score the bid space
+     * @return scoring parallelism
+     */
+    public int getScoringParallelism() {
+        return scoringParallelism;
+    }
+
     /**
      * Get the model for the agent's opponent
      * @return opponent model
@@ -206,29 +386,114 @@ public class Agent14 extends AbstractNegotiationParty {
         return opponentModel;
     }
 
-    private void evaluateEstimatedUtilitySpace(){
-        AbstractUtilitySpace ours = utilitySpace;
+    /**
+     * Get the codec used to encode bids of the domain as ordinals
+     * @return bid codec
+     */
+    public BidCodec getBidCodec() {
+        return bidCodec;
+    }
+
+    /**
+     * Get the compiled form of the agent's estimated utility space
+     * @return compiled utility evaluator
+     */
+    public CompiledUtilityEvaluator getCompiledUtility() {
+        return compiledUtility;
+    }
+
+    /**
+     * Get the cache of utilities shared by the agent's components
+     * @return utility cache
+     */
+    public UtilityCache getUtilityCache() {
+        return utilityCache;
+    }
+
+    /**
+     * Get the bids of the domain sorted by the agent's estimated utility
+     * @return sorted bid index
+     */
+    public SortedBidIndex getSortedBidIndex() {
+        return sortedBidIndex;
+    }
+
+    /**
+     * Set the number of threads used to estimate the utility space and score the bid space
+     * Leave at 1 when sessions already run concurrently, e.g. in a tournament
+     * This must be set before init is called
+     * @param scoringParallelism number of threads, 1 or less works on the negotiation thread
+     */
+    public void setScoringParallelism(int scoringParallelism) {
+        this.scoringParallelism = scoringParallelism;
+    }
+
+    /**
+     * Choose to fit the utility space by pairwise ranking regression instead of scoring values by their mean rank
+     * This must be set before init is called
+     * @param useRegressionEstimator true to use the regression estimator
+     */
+    public void setUseRegressionEstimator(boolean useRegressionEstimator) {
+        this.useRegressionEstimator = useRegressionEstimator;
+    }
+
+    /**
+     * Set how long the regression estimator may spend fitting
+     * This must be set before init is called
+     * @param regressionTimeBudget milliseconds spent fitting
+     */
+    public void setRegressionTimeBudget(long regressionTimeBudget) {
+        this.regressionTimeBudget = regressionTimeBudget;
+    }
+
+    /**
+     * Turn on working out the next offer on another thread as soon as an offer is received
+     * This must be set before init is called
+     * @param pipelineBids true to compute offers ahead of time
+     */
+    public void setPipelineBids(boolean pipelineBids) {
+        this.pipelineBids = pipelineBids;
+    }
+
+    /**
+     * Turn on measuring the estimated utility space against the real one during init, for offline experiments
+     * This must be set before init is called
+     * @param evaluateEstimator true to measure the estimate
+     */
+    public void setEvaluateEstimator(boolean evaluateEstimator) {
+        this.evaluateEstimator = evaluateEstimator;
+    }
+
+    /**
+     * Get how long the utility space took to estimate during init
+     * @return estimation time in milliseconds
+     */
+    public long getEstimationTime() {
+        return estimationTime;
+    }
+
+    /**
+     * Get how closely the estimated utility space matched the real one, measured during init
+     * @return estimator quality metrics, or null if they were not measured
+     */
+    public EstimatorQualityMetrics getEstimatorQuality() {
+        return estimatorQuality;
+    }
+
+    /**
+     * Measure the estimated utility space against the real one, which is only known in experimental runs
+     * @return estimator quality metrics, or null if the real utility space is not available
+     */
+    private EstimatorQualityMetrics evaluateEstimatedUtilitySpace() {
         AbstractUtilitySpace real;
-        if (userModel != null) {
+        if (userModel instanceof ExperimentalUserModel) {
             real = ((ExperimentalUserModel) userModel).getRealUtilitySpace();
-        } else {
+        } else if (userModel == null) {
             real = this.info.getUtilitySpace();
+        } else {
+            return null;
         }
-        System.out.println("Ours: \n" + ours);
-        System.out.println("Real: \n" + real);
-
-        try {
-            System.out.println("Our Best: " + ours.getMaxUtilityBid());
-            System.out.println("Real Best: " + real.getMaxUtilityBid());
-            System.out.println("Our Worst: " + ours.getMinUtilityBid());
-            System.out.println("Real Worst: " + real.getMinUtilityBid());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        System.out.println("ours,real");
-        for (int i = 0; i < 10000; i++) {
-            Bid randomBid =  getDomain().getRandomBid(new Random());
-            System.out.println(real.getUtility(randomBid) + "," + ours.getUtility(randomBid));
-        }
+        return EstimatorQualityMetrics.evaluate(real, compiledUtility, 10000, 100000, 100,
+                scoringParallelism, new Random());
     }
 }
@@ -30,7 +30,28 @@ public class AgentSmithAcceptanceStrategy {
      * @return true = accept, false = make new offer
      */
     public boolean accept(Bid offer) {
+        return accept(offer, agent.getUtilityThreshold());
+    }
+
+    /**
+     * A method to return if the agent should accept the current offer against a given threshold
+     * Used when the agent's threshold may already have been moved by a bid computed ahead of time
+     * @param offer the offer on the table
+     * @param threshold the utility threshold to apply
+     * @return true = accept, false = make new offer
+     */
+    public boolean accept(Bid offer, double threshold) {
+        return accept(agent.getUtility(offer), threshold);
+    }
+
+    /**
+     * A method to return if the agent should accept an offer whose utility is already known
+     * @param offerUtility the agent's estimated utility of the offer on the table
+     * @param threshold the utility threshold to apply
+     * @return true = accept, false = make new offer
+     */
+    public boolean accept(double offerUtility, double threshold) {
         // Accept offer if greater than threshold or time running out (last 5% of time) to avoid 0 utility
-        return (agent.getUtility(offer) >= agent.getUtilityThreshold()) || (agent.getTimeLine().getTime() > 0.975);
+        return (offerUtility >= threshold) || (agent.getTimeLine().getTime() > 0.975);
     }
 }
@@ -1,10 +1,6 @@
 package group14;
 
 import genius.core.Bid;
-import genius.core.BidIterator;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Bidding strategy for Agent Smith - a cooperative agent
@@ -26,7 +22,15 @@ public class AgentSmithBiddingStrategy {
     private double closestToNashEndThreshold;
     private double closestToNashEndDeadline = nashOfferDeadline + 0.675; // Deadline for calculating closest to Nash to stop
     private NashPointGenerator nashPointGenerator;
-    private List<Bid> alreadyOffered;
+    private BidCodec codec;
+    private SortedBidIndex sortedBidIndex; // All bids in descending order of the agent's utility
+    // Largest band of bids above the threshold walked directly - bigger bands use the bid space grid instead, as
+    // every new Nash estimate means scoring the whole band again while the grid query costs the same at any size
+    private static final int BAND_SCAN_LIMIT = 4096;
+    private NashPointGenerator.NashEstimate bandEstimate; // Nash estimate the band candidates were scored against
+    private int bandCursor; // Position in the sorted index up to which the band has been scored
+    private final BidDistanceHeap bandCandidates = new BidDistanceHeap(BAND_SCAN_LIMIT);
+    private OfferedBidSet alreadyOffered;
 
     /**
      * Constructor to pass reference to the agent
@@ -34,8 +38,11 @@ public class AgentSmithBiddingStrategy {
      */
     public AgentSmithBiddingStrategy(Agent14 agent) {
         this.agent = agent;
-        nashPointGenerator = new NashPointGenerator(agent.getDomain(), agent.getUtilitySpace(), agent.getOpponentModel());
-        alreadyOffered = new ArrayList<Bid>();
+        codec = agent.getBidCodec();
+        sortedBidIndex = agent.getSortedBidIndex();
+        nashPointGenerator = new NashPointGenerator(codec, agent.getCompiledUtility(), agent.getOpponentModel());
+        nashPointGenerator.setParallelism(agent.getScoringParallelism());
+        alreadyOffered = new OfferedBidSet(codec.size());
         closestToNashInitialThreshold = agent.getUtilityThreshold();
         closestToNashMidThreshold = closestToNashInitialThreshold * 0.9;
         closestToNashEndThreshold = closestToNashInitialThreshold * 0.75;
@@ -47,6 +54,9 @@ public class AgentSmithBiddingStrategy {
      * @return initial bid
      */
     private Bid getInitialBid() {
+        if (!sortedBidIndex.isSampled() && sortedBidIndex.size() > 0) {
+            return codec.decode(sortedBidIndex.getOrdinal(0));
+        }
         try {
             return agent.getUtilitySpace().getMaxUtilityBid();
         } catch (Exception e) {
@@ -56,16 +66,22 @@ public class AgentSmithBiddingStrategy {
     }
 
     /**
-     * Method to get the next bid the agent should make
-     * Uses it's estimated utility threshold to find bids and
-     * generates a list of bids above that threshold to get all bids with best utility for itself
-     * It then picks the most likely to have greatest utility for opponent using the opponent model
-     * @return next bid
+     * Method to get the bid at the estimated Nash point
+     * The Nash point is computed in the background from the latest opponent model, so this never waits for it
+     * If no estimate has been completed yet, the initial bid is offered again
+     * @return Nash bid
      */
     private Bid getNashBid() {
-        // Assumes opponent model updated with every offer
-        nashPointGenerator.updateBidSpace(agent.getOpponentModel());
-        return nashPointGenerator.getNashPoint();
+        NashPointGenerator.NashEstimate nash = nashPointGenerator.getLatestEstimate();
+        return nash == null ? getInitialBid() : nash.getBid();
+    }
+
+    /**
+     * Method to pass the latest opponent model to the Nash point generator
+     * This should be called whenever the opponent model is updated
+     */
+    public void opponentModelUpdated() {
+        nashPointGenerator.submit(agent.getOpponentModel().snapshot());
     }
 
     private double getTimeBasedUtilityThreshold(){
@@ -97,27 +113,60 @@ public class AgentSmithBiddingStrategy {
         // Slowly lowering utility threshold
         agent.setUtilityThreshold(this.getTimeBasedUtilityThreshold());
 
-        Bid closestToNash = null;
-        double closestDistance = 1; // Max distance possible
-        BidIterator iterator = new BidIterator(agent.getDomain());
+        NashPointGenerator.NashEstimate nash = nashPointGenerator.getLatestEstimate();
+        if (nash == null) {
+            return getNashBid();
+        }
+        // Only consider those bids above the threshold, closer than the max distance possible
+        // Also trying to avoid sending the same bid again if it wasn't accepted the first time
+        long closestToNash;
+        int band = sortedBidIndex.countAtLeast(agent.getUtilityThreshold());
+        if (!sortedBidIndex.isSampled() && band <= BAND_SCAN_LIMIT) {
+            // Few enough bids are above the threshold to check each of them
+            closestToNash = getClosestInBand(nash, band);
+        } else {
+            closestToNash = nash.getBidSpaceGrid().nearest(nash.getAgentUtility(), nash.getOpponentUtility(),
+                    agent.getUtilityThreshold(), 1, alreadyOffered::contains);
+        }
+        // If no bid returned - all offered already, try sending Nash bid again
+        return closestToNash == -1 ? getNashBid() : codec.decode(closestToNash);
+    }
 
-        while (iterator.hasNext()) {
-            Bid b = iterator.next();
-            // Only consider those bids above the threshold
-            // Also trying to avoid sending the same bid again if it wasn't accepted the first time
-            if (!alreadyOffered.contains(b) && agent.getUtility(b) >= agent.getUtilityThreshold()) {
-                double distanceToNash = nashPointGenerator.distanceToNash(b);
-                // If distance is -1, no Nash point exists
-                // If the distance is 0, this bid is the Nash point (which has already been offered before)
-                if (distanceToNash != -1 && distanceToNash != 0
-                        && distanceToNash < closestDistance) {
-                    closestDistance = distanceToNash;
-                    closestToNash = b;
-                }
+    /**
+     * Method to find the bid closest to the Nash point out of the best bids for the agent
+     * The threshold only falls while conceding, so the band only grows - bids already scored against the same
+     * Nash estimate are kept in a heap between turns and only the newly eligible bids are scored
+     * If the estimate changes or the band shrinks, the band is scored again from the top of the index
+     * @param nash the Nash point estimate
+     * @param band number of bids from the top of the sorted index to check
+     * @return ordinal of the closest bid not already offered, or -1 if there is none
+     */
+    private long getClosestInBand(NashPointGenerator.NashEstimate nash, int band) {
+        if (nash != bandEstimate || band < bandCursor) {
+            bandEstimate = nash;
+            bandCursor = 0;
+            bandCandidates.clear();
+        }
+        for (; bandCursor < band; bandCursor++) {
+            long ordinal = sortedBidIndex.getOrdinal(bandCursor);
+            if (alreadyOffered.contains(ordinal)) {
+                continue;
+            }
+            double agentUtilDiff = nash.getAgentUtility() - sortedBidIndex.getUtility(bandCursor);
+            double opponentUtilDiff = nash.getOpponentUtility()
+                    - agent.getUtilityCache().getOpponentUtility(nash.getOpponentModel(), ordinal);
+            double distanceToNash = Math.sqrt((agentUtilDiff * agentUtilDiff) + (opponentUtilDiff * opponentUtilDiff));
+            // If the distance is 0, this bid is the Nash point (which has already been offered before)
+            // Bids further than the max distance possible are never chosen
+            if (distanceToNash != 0 && distanceToNash < 1) {
+                bandCandidates.add(ordinal, distanceToNash);
             }
         }
-        // If no bid returned - all offered already, try sending Nash bid again
-        return closestToNash == null ? getNashBid() : closestToNash;
+        // Bids offered since they were scored are dropped as they reach the top
+        while (!bandCandidates.isEmpty() && alreadyOffered.contains(bandCandidates.peek())) {
+            bandCandidates.poll();
+        }
+        return bandCandidates.isEmpty() ? -1 : bandCandidates.peek();
     }
 
     /**
@@ -137,7 +186,9 @@ public class AgentSmithBiddingStrategy {
             // Utility threshold updated to the last bid offered
             // for the majority of the time, this will be the bid at the nash point
             // This means the agent will not accept anything with utility lower than at the Nash point
-            agent.setUtilityThreshold(nashPointGenerator.getNashUtility());
+            if (nashPointGenerator.getLatestEstimate() != null) {
+                agent.setUtilityThreshold(nashPointGenerator.getNashUtility());
+            }
         } else if (time < closestToNashEndDeadline) {
             // Finished offering Nash point so now lower utility threshold and offer bids closest to the Nash point
             returnBid = getNextBid();
@@ -145,7 +196,24 @@ public class AgentSmithBiddingStrategy {
             // Otherwise must be in the last stretch of the negotiation
             returnBid = agent.getBestOfferSoFar();
         }
-        alreadyOffered.add(returnBid);
         return returnBid;
     }
+
+    /**
+     * A method to release the threads used to compute the Nash point, once the negotiation has ended
+     */
+    public void close() {
+        nashPointGenerator.close();
+    }
+
+    /**
+     * A method to record a bid the agent has actually offered, so it is not offered again when conceding
+     * This is kept separate from getBid so a bid computed ahead of time is only recorded if it is used
+     * @param bid the bid offered
+     */
+    public void offered(Bid bid) {
+        if (bid != null) {
+            alreadyOffered.add(codec.encode(bid));
+        }
+    }
 }
@@ -1,44 +1,106 @@
 package group14;
 
-import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collection;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import genius.core.Bid;
 import genius.core.Domain;
 import genius.core.DomainImpl;
-import genius.core.issue.Issue;
-import genius.core.issue.IssueDiscrete;
-import genius.core.issue.Value;
-import genius.core.issue.ValueDiscrete;
 
 public class AgentSmithOpponentModel {
 
 	private Domain d;
-	private Integer[][] counter;
-	private Double[] issueWeights;
-	private Double[][] optionOrder;
+	private BidCodec codec;
+	private int[][] counter; // Times each value has been offered, by issue index and value index
+	private double[] issueWeights;
+	private double[][] optionOrder; // Score of each value from its frequency rank, by issue index and value index
+	private int[][] rank; // Frequency rank of each value, 0 being the most offered, by issue index and value index
+	private int[][] rankedOptions; // Value index at each rank, by issue index and rank
+	private long[] sumSquaredCounts; // Sum of the squared value counts of each issue
+	private boolean[] ranksChanged; // Issues whose ranks have moved since the option scores were last computed
+	private boolean dirty = false; // Weights and option scores need recomputing before they are next read
+	private boolean scored = false; // Option scores have been computed at least once
+	private long rankSignature; // Hash of the option ranks and the order of the issue weights
+	private int rankSignatureVersion = -1; // Version the rank signature was computed for
 	private int numberOfBids = 0;
-	private HashMap<ArrayList<Integer>,String> discreteValueIndex = new HashMap<ArrayList<Integer>,String>();
-	private HashMap<String,ArrayList<Integer>> reverseDiscreteValueIndex = new HashMap<String,ArrayList<Integer>>();
-	private HashMap<Integer,Integer> issueEvaluator = new HashMap<Integer,Integer>();
+	private static final AtomicInteger VERSIONS = new AtomicInteger(); // Source of versions unique across every model
+	private int version = 0;
 
 
 	public AgentSmithOpponentModel(Domain d) {
-		this.d = d;
+		this(new BidCodec(d));
+	}
+
+	public AgentSmithOpponentModel(BidCodec codec) {
+		this.d = codec.getDomain();
+		this.codec = codec;
 		createIndexAndCounter();
 	}
 
+	/**
+	 * Copy another model, with its weights and option scores already up to date
+	 * @param other the model to copy
+	 */
+	private AgentSmithOpponentModel(AgentSmithOpponentModel other) {
+		other.refresh();
+		this.d = other.d;
+		this.codec = other.codec;
+		this.counter = deepCopy(other.counter);
+		this.issueWeights = other.issueWeights.clone();
+		this.optionOrder = new double[other.optionOrder.length][];
+		for(int i = 0; i < optionOrder.length; i ++)
+		{
+			optionOrder[i] = other.optionOrder[i].clone();
+		}
+		this.rank = deepCopy(other.rank);
+		this.rankedOptions = deepCopy(other.rankedOptions);
+		this.sumSquaredCounts = other.sumSquaredCounts.clone();
+		this.ranksChanged = other.ranksChanged.clone();
+		this.scored = other.scored;
+		this.rankSignature = other.rankSignature;
+		this.rankSignatureVersion = other.rankSignatureVersion;
+		this.numberOfBids = other.numberOfBids;
+		this.version = other.version;
+	}
+
+	/**
+	 * Take a copy of the model which will not change as more bids are received
+	 * The copy is up to date when returned, so it can be read from another thread
+	 * as long as it is not given any more bids
+	 * @return snapshot of the model
+	 */
+	public AgentSmithOpponentModel snapshot()
+	{
+		return new AgentSmithOpponentModel(this);
+	}
+
+	/**
+	 * Take a snapshot of the model with its issue weights replaced
+	 * The copy has a version of its own, so utilities cached for the model are not mixed up with the copy's
+	 * It must not be given any more bids, as that would recompute its weights
+	 * @param weights the issue weights for the copy, by issue index
+	 * @return reweighted snapshot of the model
+	 */
+	AgentSmithOpponentModel withIssueWeights(double[] weights)
+	{
+		AgentSmithOpponentModel copy = new AgentSmithOpponentModel(this);
+		copy.issueWeights = weights.clone();
+		copy.version = VERSIONS.incrementAndGet();
+		return copy;
+	}
+
+	private static int[][] deepCopy(int[][] array)
+	{
+		int[][] copy = new int[array.length][];
+		for(int i = 0; i < array.length; i ++)
+		{
+			copy[i] = array[i].clone();
+		}
+		return copy;
+	}
+
 	public static void main(String[] args) throws IOException {
 
 		DomainImpl d = new DomainImpl("domaintest.xml");
@@ -61,113 +123,261 @@ public class AgentSmithOpponentModel {
 
 	}
 
-	public Double opponentBidUtility(Bid b)
+	/**
+	 * Estimated utility of a bid for the opponent
+	 * Values are looked up by issue, so labels shared between issues cannot collide
+	 * @param b the bid
+	 * @return estimated opponent utility
+	 */
+	public double opponentBidUtility(Bid b)
 	{
-		List<Issue> issueList = d.getIssues();
-		Double utility = 0.0;
-
-
-
-		for(int i = 0; i < b.getIssues().size(); i ++)
+		refresh();
+		double utility = 0.0;
+		for(int i = 0; i < counter.length; i ++)
 		{
-			Value bidValue = b.getValue(issueEvaluator.get(i));
-			ValueDiscrete vd = (ValueDiscrete) bidValue;
-
-			ArrayList<Integer> tableLookup = reverseDiscreteValueIndex.get(vd.getValue());
-			utility += issueWeights[tableLookup.get(0)] * optionOrder[tableLookup.get(0)][tableLookup.get(1)];
-
+			utility += issueWeights[i] * optionOrder[i][codec.valueIndex(b, i)];
 		}
+		return utility;
+	}
 
-
+	/**
+	 * Estimated utility of an encoded bid for the opponent, read straight from the model arrays
+	 * @param ordinal the ordinal of the bid
+	 * @return estimated opponent utility
+	 */
+	public double opponentBidUtility(long ordinal)
+	{
+		refresh();
+		double utility = 0.0;
+		for(int i = 0; i < counter.length; i ++)
+		{
+			utility += issueWeights[i] * optionOrder[i][codec.valueIndex(ordinal, i)];
+		}
 		return utility;
 	}
 
 	private void createIndexAndCounter()
 	{
-		List<Issue> issueList = d.getIssues();
-		counter = new Integer[issueList.size()][];
-		discreteValueIndex = new HashMap<ArrayList<Integer>,String>();
-		issueEvaluator = new HashMap<Integer,Integer>();
-
-		ArrayList<Integer> valueKey;
+		int issues = codec.getIssueCount();
+		counter = new int[issues][];
+		optionOrder = new double[issues][];
+		rank = new int[issues][];
+		rankedOptions = new int[issues][];
+		issueWeights = new double[issues];
+		sumSquaredCounts = new long[issues];
+		ranksChanged = new boolean[issues];
 
 		//create counter
-		for(Integer i = 0; i < issueList.size(); i ++)
+		for(int i = 0; i < issues; i ++)
 		{
-			Issue iss = issueList.get(i);
-			issueEvaluator.put(i, iss.getNumber());
-
-			IssueDiscrete id = (IssueDiscrete) issueList.get(i);
-			counter[i] = new Integer[id.getNumberOfValues()];
-			for(Integer p= 0; p < id.getNumberOfValues(); p ++)
+			counter[i] = new int[codec.getValueCount(i)];
+			optionOrder[i] = new double[codec.getValueCount(i)];
+			rank[i] = new int[codec.getValueCount(i)];
+			rankedOptions[i] = new int[codec.getValueCount(i)];
+			// With no counts the ranks follow the option index
+			for(int p = 0; p < rank[i].length; p ++)
 			{
-				valueKey = new ArrayList<Integer>();
-				valueKey.add(i);
-				valueKey.add(p);
-				discreteValueIndex.put(valueKey, id.getValue(p).getValue());
-				reverseDiscreteValueIndex.put(id.getValue(p).getValue(), valueKey);
-				counter[i][p] = 0;
+				rank[i][p] = p;
+				rankedOptions[i][p] = p;
 			}
 		}
+	}
+
+
+	/**
+	 * Count the values of a bid offered by the opponent
+	 * Only the counters and ranks are updated here, weights and option scores are recomputed on the next read
+	 * @param b the bid received
+	 */
+	public void recievedBid(Bid b)
+	{
+		for(int i = 0; i< counter.length; i ++)
+		{
+			countOption(i, codec.valueIndex(b, i));
+		}
+		numberOfBids += 1;
+		version = VERSIONS.incrementAndGet();
+		dirty = true;
+	}
 
+	/**
+	 * Count the values of several bids offered by the opponent
+	 * @param bids the bids received
+	 */
+	public void receivedBids(Collection<Bid> bids)
+	{
+		for(Bid b : bids)
+		{
+			recievedBid(b);
+		}
+	}
 
+	/**
+	 * Get the estimated weight of an issue for the opponent
+	 * @param issueIndex the position of the issue in the domain
+	 * @return issue weight
+	 */
+	public double getIssueWeight(int issueIndex)
+	{
+		refresh();
+		return issueWeights[issueIndex];
+	}
 
+	/**
+	 * Get the estimated score of a value for the opponent, from how often it has been offered
+	 * @param issueIndex the position of the issue in the domain
+	 * @param valueIndex the index of the value for that issue
+	 * @return option score
+	 */
+	public double getOptionScore(int issueIndex, int valueIndex)
+	{
+		refresh();
+		return optionOrder[issueIndex][valueIndex];
 	}
 
+	public int getNumberOfBids()
+	{
+		return numberOfBids;
+	}
 
-	public void recievedBid(Bid b)
+	/**
+	 * Get a version number for the model, which changes whenever the model does
+	 * The model only changes when a bid is received, and snapshots keep the version they were taken at
+	 * Versions are unique across models, so a reweighted snapshot never shares one with the model it came from
+	 * @return model version
+	 */
+	public int getVersion()
 	{
-		ArrayList<Integer> valueKey;
+		return version;
+	}
 
-		for(int i = 0; i< counter.length; i ++)
+	/**
+	 * Find which option scores differ from a table of scores taken from an earlier version of the model
+	 * As scores come from ranks, a single bid usually only changes the scores of a few values in one issue
+	 * @param scores option scores by issue index and value index to compare with
+	 * @param changedIssues set to true for each issue with at least one changed score, false otherwise
+	 * @return number of values whose score has changed
+	 */
+	public int findScoreChanges(double[][] scores, boolean[] changedIssues)
+	{
+		refresh();
+		int changes = 0;
+		for(int i = 0; i < optionOrder.length; i ++)
 		{
-			for(int p = 0; p < counter[i].length; p ++)
+			changedIssues[i] = false;
+			for(int p = 0; p < optionOrder[i].length; p ++)
 			{
-
-				Value bidValue = b.getValue(issueEvaluator.get(i));
-				ValueDiscrete vd = (ValueDiscrete) bidValue;
-				valueKey = new ArrayList<Integer>();
-				valueKey.add(i);
-				valueKey.add(p);
-				if(vd.getValue().equals(discreteValueIndex.get(valueKey)))
+				if(optionOrder[i][p] != scores[i][p])
 				{
-					counter[i][p] ++;
+					changedIssues[i] = true;
+					changes ++;
 				}
-
 			}
 		}
-		numberOfBids += 1;
-		orderOfOptions();
-		issueWeights();
+		return changes;
+	}
 
-		if(numberOfBids == 200)
+	/**
+	 * Find the largest difference between the issue weights and the weights from an earlier version of the model
+	 * @param weights issue weights by issue index to compare with
+	 * @return largest absolute change of any issue weight
+	 */
+	public double findLargestWeightChange(double[] weights)
+	{
+		refresh();
+		double largest = 0;
+		for(int i = 0; i < issueWeights.length; i ++)
 		{
-			try (Writer writer = new BufferedWriter(new OutputStreamWriter(
-					new FileOutputStream("200bid.csv"), "utf-8"))) {
+			largest = Math.max(largest, Math.abs(issueWeights[i] - weights[i]));
+		}
+		return largest;
+	}
 
-				for(int i = 0; i< optionOrder.length; i ++)
+	/**
+	 * Get a hash of the order of the options of every issue and the order of the issue weights
+	 * If this is unchanged between two versions, the model ranks everything the same way,
+	 * so anything worked out from those ranks, like the Nash point, is very likely unchanged too
+	 * @return rank signature
+	 */
+	public long getRankSignature()
+	{
+		if(rankSignatureVersion != getVersion())
+		{
+			refresh();
+			long hash = 17;
+			for(int i = 0; i < rankedOptions.length; i ++)
+			{
+				for(int r = 0; r < rankedOptions[i].length; r ++)
 				{
-					for(int p = 0; p < optionOrder[i].length; p ++)
+					hash = 31 * hash + rankedOptions[i][r];
+				}
+			}
+			// Issue indices from heaviest to lightest weight, ties in index order
+			boolean[] placed = new boolean[issueWeights.length];
+			for(int r = 0; r < issueWeights.length; r ++)
+			{
+				int heaviest = -1;
+				for(int i = 0; i < issueWeights.length; i ++)
+				{
+					if(!placed[i] && (heaviest == -1 || issueWeights[i] > issueWeights[heaviest]))
 					{
-						Double e = issueWeights[i] * optionOrder[i][p];
-						writer.write(e.toString() + System.lineSeparator());
+						heaviest = i;
 					}
 				}
-
-			} catch (UnsupportedEncodingException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (FileNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				placed[heaviest] = true;
+				hash = 31 * hash + heaviest;
 			}
+			rankSignature = hash;
+			rankSignatureVersion = getVersion();
 		}
+		return rankSignature;
+	}
+
+	/**
+	 * Increase the count of a value and move it up the ranking past any neighbours it now beats
+	 * The ranking is kept in the same order a stable sort by descending count would give
+	 * @param i issue index
+	 * @param p value index
+	 */
+	private void countOption(int i, int p)
+	{
+		int count = counter[i][p];
+		counter[i][p] = count + 1;
+		// (c + 1)^2 = c^2 + 2c + 1
+		sumSquaredCounts[i] += 2L * count + 1;
 
+		int r = rank[i][p];
+		while(r > 0)
+		{
+			int q = rankedOptions[i][r - 1];
+			if(counter[i][q] > counter[i][p] || (counter[i][q] == counter[i][p] && q < p))
+			{
+				break;
+			}
+			rankedOptions[i][r] = q;
+			rank[i][q] = r;
+			r --;
+		}
+		if(r != rank[i][p])
+		{
+			rankedOptions[i][r] = p;
+			rank[i][p] = r;
+			ranksChanged[i] = true;
+		}
 	}
 
+	/**
+	 * Recompute the weights and option scores if bids have been received since they were last read
+	 */
+	void refresh()
+	{
+		if(dirty)
+		{
+			dirty = false;
+			orderOfOptions();
+			issueWeights();
+		}
+	}
 
 	/* creates freq from nothing (not required anymore)
 	private void findFrequency()
@@ -205,82 +415,37 @@ public class AgentSmithOpponentModel {
 	 */
 	private void orderOfOptions()
 	{
-
-		optionOrder = new Double[ counter.length][];
 		for(int i = 0; i<  counter.length; i ++)
 		{
-			ArrayIndexComparator comparator = new ArrayIndexComparator(counter[i]);
-			Integer[] indexes = comparator.createIndexArray();
-			Arrays.sort(indexes, comparator);	
-
-			optionOrder[i] = new Double[indexes.length];
-			for(int p = 0; p < indexes.length;p ++)
+			// Scores only change when the ranks do, once they have been computed the first time
+			if(!ranksChanged[i] && scored)
 			{
-				Double d = (double) (indexes.length - indexes[p] );
-				d /= (double) indexes.length;
-				optionOrder[i][p] = d;
+				continue;
+			}
+			ranksChanged[i] = false;
+			int options = counter[i].length;
+			for(int p = 0; p < options; p ++)
+			{
+				optionOrder[i][p] = (double) (options - rank[i][p]) / (double) options;
 			}
-
 		}
-
-
-
+		scored = true;
 	}
 
 	private void issueWeights()
 	{
-		Double[] unnormalisedIssueWeights = new Double[counter.length];
-
+		// Each weight is the sum of squared value frequencies, the number of bids cancels out when normalised
 		double sumWeights = 0;
 		for(int i = 0; i < counter.length;i ++)
 		{
-			unnormalisedIssueWeights[i] = 0.0;
-			for(int p = 0; p < counter[i].length; p ++)
-			{
-
-				if(numberOfBids != 0 && counter[i][p] != 0)
-				{
-					unnormalisedIssueWeights[i] += (Math.pow(counter[i][p], 2) / (Math.pow(numberOfBids, 2) ));
-				}
-			}
-
-			sumWeights += unnormalisedIssueWeights[i];
+			sumWeights += sumSquaredCounts[i];
 		}
 
-
-		issueWeights = new Double[counter.length];
 		for(int i = 0; i < counter.length;i ++)
 		{
-			issueWeights[i] = unnormalisedIssueWeights[i] / sumWeights;
-		}
-
-	}
-
-	private class ArrayIndexComparator implements Comparator<Integer>
-	{
-		private final Integer[] array;
-
-		public ArrayIndexComparator(Integer[] array)
-		{
-			this.array = array;
-		}
-
-		public Integer[] createIndexArray()
-		{
-			Integer[] indexes = new Integer[array.length];
-			for (int i = 0; i < array.length; i++)
-			{
-				indexes[i] = i; // Autoboxing
-			}
-			return indexes;
+			issueWeights[i] = sumWeights == 0 ? 0 : sumSquaredCounts[i] / sumWeights;
 		}
 
-		@Override
-		public int compare(Integer index1, Integer index2)
-		{
-			// Autounbox from Integer to int to use as array indexes
-			return array[index2].compareTo(array[index1]);
-		}
 	}
 
 
@@ -10,10 +10,17 @@ import genius.core.uncertainty.BidRanking;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class AgentSmithUtilityEstimator extends AdditiveUtilitySpaceFactory {
 
     private Domain domain;
+    private BidCodec codec;
+    private boolean streaming = true; // Single pass over the ranking with running statistics per value
+    private static final int PARALLEL_CHUNK_SIZE = 2048; // Ranked bids collected by a single task before it is split
+    private int parallelism = 1; // Threads used to collect statistics, 1 collects on the calling thread
 
     /**
      * Generates an simple Utility Space on the domain, with equal weights and zero values.
@@ -22,12 +29,242 @@ public class AgentSmithUtilityEstimator extends AdditiveUtilitySpaceFactory {
      * @param d
      */
     public AgentSmithUtilityEstimator(Domain d) {
+        this(d, new BidCodec(d));
+    }
+
+    /**
+     * Generates an simple Utility Space on the domain, reusing a codec already built for it
+     *
+     * @param d
+     * @param codec codec for the bids of the domain
+     */
+    public AgentSmithUtilityEstimator(Domain d, BidCodec codec) {
         super(d);
         domain = d;
+        this.codec = codec;
+    }
+
+    /**
+     * Choose between the streaming estimate and the original estimate which keeps every position of every value
+     * @param streaming true to use running statistics
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Set the number of threads used to collect statistics from big rankings
+     * The estimate is the same whatever the number of threads
+     * @param parallelism number of threads, 1 or less collects on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
     }
 
     @Override
     public void estimateUsingBidRanks(BidRanking r) {
+        if (streaming) {
+            estimateUsingRunningStatistics(r);
+        } else {
+            estimateUsingPositionLists(r);
+        }
+    }
+
+    /**
+     * Running statistics of the positions each value appears at in a ranking
+     * A running count, mean and sum of squared differences from the mean (Welford's method) is kept for every
+     * value in primitive arrays, so memory does not grow with the size of the ranking
+     * Statistics of two parts of a ranking are combined with Chan's pairwise update
+     */
+    private static final class ValueStatistics {
+
+        private final long[][] count;
+        private final double[][] mean;
+        private final double[][] m2;
+
+        ValueStatistics(BidCodec codec) {
+            int issueCount = codec.getIssueCount();
+            count = new long[issueCount][];
+            mean = new double[issueCount][];
+            m2 = new double[issueCount][];
+            for (int i = 0; i < issueCount; i++) {
+                count[i] = new long[codec.getValueCount(i)];
+                mean[i] = new double[codec.getValueCount(i)];
+                m2[i] = new double[codec.getValueCount(i)];
+            }
+        }
+
+        void add(int issue, int value, long position) {
+            count[issue][value]++;
+            double difference = position - mean[issue][value];
+            mean[issue][value] += difference / count[issue][value];
+            m2[issue][value] += difference * (position - mean[issue][value]);
+        }
+
+        void merge(ValueStatistics other) {
+            for (int i = 0; i < count.length; i++) {
+                for (int v = 0; v < count[i].length; v++) {
+                    long otherCount = other.count[i][v];
+                    if (otherCount == 0) {
+                        continue;
+                    }
+                    long total = count[i][v] + otherCount;
+                    double difference = other.mean[i][v] - mean[i][v];
+                    mean[i][v] += difference * otherCount / total;
+                    m2[i][v] += other.m2[i][v] + difference * difference * count[i][v] * otherCount / total;
+                    count[i][v] = total;
+                }
+            }
+        }
+
+        double mean(int issue, int value) {
+            return mean[issue][value];
+        }
+
+        double variance(int issue, int value) {
+            return m2[issue][value] / count[issue][value];
+        }
+    }
+
+    /**
+     * A task to collect the statistics of a range of the ranking, split in half until the range is small enough
+     * Each half has its own statistics, which are merged once both halves are done
+     * Ranges are split and merged exactly as in collectSplit, so the result is the same on any number of threads
+     */
+    private class StatisticsTask extends RecursiveTask<ValueStatistics> {
+
+        private final List<Bid> bids;
+        private final long[] ordinals;
+        private final int from;
+        private final int to;
+
+        /**
+         * @param bids ranked bids, or null if the ranking is of ordinals
+         * @param ordinals ranked ordinals, or null if the ranking is of bids
+         * @param from first position to collect, inclusive and counted from 0
+         * @param to last position to collect, exclusive
+         */
+        StatisticsTask(List<Bid> bids, long[] ordinals, int from, int to) {
+            this.bids = bids;
+            this.ordinals = ordinals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ValueStatistics compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                return collectRange(bids, ordinals, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            StatisticsTask upper = new StatisticsTask(bids, ordinals, middle, to);
+            upper.fork();
+            ValueStatistics statistics = new StatisticsTask(bids, ordinals, from, middle).compute();
+            statistics.merge(upper.join());
+            return statistics;
+        }
+    }
+
+    /**
+     * Estimate the utility space in a single pass over the ranking
+     * @param r the bid ranking, worst bid first
+     */
+    private void estimateUsingRunningStatistics(BidRanking r) {
+        List<Bid> bids = r.getBidOrder();
+        if (!(bids instanceof RandomAccess)) {
+            bids = new ArrayList<>(bids);
+        }
+        applyStatistics(collect(bids, null, bids.size()));
+    }
+
+    /**
+     * Estimate the utility space from a ranking of encoded bids, without building any Bid objects
+     * @param ordinals ordinals of the ranked bids, worst bid first
+     * @param size number of ranked bids
+     */
+    public void estimateUsingOrdinalRanking(long[] ordinals, int size) {
+        applyStatistics(collect(null, ordinals, size));
+    }
+
+    /**
+     * Collect the statistics of a whole ranking, splitting it across threads if parallelism is set
+     * @param bids ranked bids, or null if the ranking is of ordinals
+     * @param ordinals ranked ordinals, or null if the ranking is of bids
+     * @param size number of ranked bids
+     * @return statistics of the ranking
+     */
+    private ValueStatistics collect(List<Bid> bids, long[] ordinals, int size) {
+        if (parallelism <= 1 || size <= PARALLEL_CHUNK_SIZE) {
+            return collectSplit(bids, ordinals, 0, size);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new StatisticsTask(bids, ordinals, 0, size));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Collect the statistics of a range of the ranking on the calling thread, split and merged in the same
+     * chunks as StatisticsTask
+     */
+    private ValueStatistics collectSplit(List<Bid> bids, long[] ordinals, int from, int to) {
+        if (to - from <= PARALLEL_CHUNK_SIZE) {
+            return collectRange(bids, ordinals, from, to);
+        }
+        int middle = (from + to) >>> 1;
+        ValueStatistics statistics = collectSplit(bids, ordinals, from, middle);
+        statistics.merge(collectSplit(bids, ordinals, middle, to));
+        return statistics;
+    }
+
+    private ValueStatistics collectRange(List<Bid> bids, long[] ordinals, int from, int to) {
+        ValueStatistics statistics = new ValueStatistics(codec);
+        for (int index = from; index < to; index++) {
+            // Positions count from 1, as in the original estimate
+            long position = index + 1;
+            if (bids != null) {
+                Bid b = bids.get(index);
+                for (int i = 0; i < codec.getIssueCount(); i++) {
+                    statistics.add(i, codec.valueIndex(b, i), position);
+                }
+            } else {
+                for (int i = 0; i < codec.getIssueCount(); i++) {
+                    statistics.add(i, codec.valueIndex(ordinals[index], i), position);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Set each value's utility to its mean position and each issue's weight from its largest position variance
+     * @param statistics the position statistics of the ranking
+     */
+    private void applyStatistics(ValueStatistics statistics) {
+        List<Issue> issues = domain.getIssues();
+        for (int i = 0; i < codec.getIssueCount(); i++) {
+            double maxStddev = Double.NEGATIVE_INFINITY;
+            boolean seen = false;
+            for (int v = 0; v < statistics.count[i].length; v++) {
+                // Values never ranked are left at zero, as before
+                if (statistics.count[i][v] == 0) {
+                    continue;
+                }
+                seen = true;
+                double stddev = statistics.variance(i, v);
+                maxStddev = Math.max(maxStddev, stddev);
+                this.setUtility(issues.get(i), codec.getValue(i, v), statistics.mean(i, v));
+            }
+            if (seen) {
+                getUtilitySpace().setWeight(issues.get(i), 1d / maxStddev);
+            }
+        }
+        this.normalizeWeightsByMaxValues();
+    }
+
+    private void estimateUsingPositionLists(BidRanking r) {
         HashMap<Issue, HashMap<ValueDiscrete, List<Integer>>> issueValues = new HashMap<>();
 
         int position = 0;
@@ -0,0 +1,105 @@
+package group14;
+
+/**
+ * A local search for the Nash point of domains too big to score every bid
+ * Starting from promising bids, it repeatedly flips the single issue value that most increases the
+ * product of the agent and opponent utilities, until no flip helps or the time budget runs out
+ * The best bid found so far is always available, so the search can be stopped at any time
+ */
+public class AnytimeNashSearch {
+
+    private final BidCodec codec;
+    private final CompiledUtilityEvaluator agentUtilitySpace;
+    private final AgentSmithOpponentModel opponentModel;
+    private final double[][] opponentContribution; // Opponent utility added by each issue and value
+    private long bestOrdinal = -1;
+    private double bestProduct = -1;
+
+    /**
+     * A constructor to set up a search against one version of the opponent model
+     * @param codec the codec for the bids of the negotiation domain
+     * @param agentUtilitySpace the compiled utility space for Agent Smith
+     * @param opponentModel the opponent model, which should not change during the search
+     */
+    public AnytimeNashSearch(BidCodec codec, CompiledUtilityEvaluator agentUtilitySpace,
+                             AgentSmithOpponentModel opponentModel) {
+        this.codec = codec;
+        this.agentUtilitySpace = agentUtilitySpace;
+        this.opponentModel = opponentModel;
+        opponentContribution = new double[codec.getIssueCount()][];
+        for (int i = 0; i < codec.getIssueCount(); i++) {
+            opponentContribution[i] = new double[codec.getValueCount(i)];
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                opponentContribution[i][v] = opponentModel.getIssueWeight(i) * opponentModel.getOptionScore(i, v);
+            }
+        }
+    }
+
+    /**
+     * A method to climb from a starting bid until a local optimum or the deadline is reached
+     * @param start ordinal of the bid to start from
+     * @param deadline value of System.nanoTime() at which to stop
+     * @return true if the local optimum was reached before the deadline
+     */
+    public boolean climb(long start, long deadline) {
+        long current = start;
+        double agentUtility = agentUtilitySpace.getUtility(current);
+        double opponentUtility = opponentModel.opponentBidUtility(current);
+        consider(current, agentUtility * opponentUtility);
+
+        while (System.nanoTime() < deadline) {
+            long bestNeighbour = -1;
+            double bestNeighbourProduct = agentUtility * opponentUtility;
+            double bestNeighbourAgentUtility = 0;
+            double bestNeighbourOpponentUtility = 0;
+
+            // Try every bid which differs from the current one in a single issue
+            for (int i = 0; i < codec.getIssueCount(); i++) {
+                int currentValue = codec.valueIndex(current, i);
+                double agentWithout = agentUtility - agentUtilitySpace.getContribution(i, currentValue);
+                double opponentWithout = opponentUtility - opponentContribution[i][currentValue];
+                for (int v = 0; v < codec.getValueCount(i); v++) {
+                    if (v == currentValue) {
+                        continue;
+                    }
+                    double neighbourAgentUtility = agentWithout + agentUtilitySpace.getContribution(i, v);
+                    double neighbourOpponentUtility = opponentWithout + opponentContribution[i][v];
+                    double product = neighbourAgentUtility * neighbourOpponentUtility;
+                    if (product > bestNeighbourProduct) {
+                        bestNeighbour = codec.withValue(current, i, v);
+                        bestNeighbourProduct = product;
+                        bestNeighbourAgentUtility = neighbourAgentUtility;
+                        bestNeighbourOpponentUtility = neighbourOpponentUtility;
+                    }
+                }
+            }
+
+            if (bestNeighbour == -1) {
+                return true;
+            }
+            current = bestNeighbour;
+            agentUtility = bestNeighbourAgentUtility;
+            opponentUtility = bestNeighbourOpponentUtility;
+            consider(current, bestNeighbourProduct);
+        }
+        return false;
+    }
+
+    private void consider(long ordinal, double product) {
+        if (product > bestProduct) {
+            bestProduct = product;
+            bestOrdinal = ordinal;
+        }
+    }
+
+    /**
+     * @return ordinal of the bid with the greatest utility product found so far, or -1 if none
+     */
+    public long getBestOrdinal() {
+        return bestOrdinal;
+    }
+
+    public double getBestProduct() {
+        return bestProduct;
+    }
+}
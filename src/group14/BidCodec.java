@@ -0,0 +1,152 @@
+package group14;
+
+import genius.core.Bid;
+import genius.core.Domain;
+import genius.core.issue.Issue;
+import genius.core.issue.IssueDiscrete;
+import genius.core.issue.Value;
+import genius.core.issue.ValueDiscrete;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A codec to map every bid in a discrete domain to a dense long ordinal and back
+ * The ordinal is a mixed radix number where each digit is the index of the chosen value for an issue,
+ * with the first issue as the least significant digit
+ * This lets the agent use a primitive long as the identity of a bid instead of hashing Bid objects
+ */
+public class BidCodec {
+
+    private final Domain domain;
+    private final int[] issueNumbers; // Issue number for each issue index
+    private final int[] radix; // Number of values for each issue index
+    private final long[] stride; // Place value of each issue index in the ordinal
+    private final ValueDiscrete[][] values; // Value for each issue index and value index
+    private final HashMap<ValueDiscrete, Integer>[] valueIndex; // Value index lookup for each issue index
+    private final long size;
+
+    /**
+     * A constructor to build the codec for a domain
+     * Only domains made up entirely of discrete issues are supported
+     * @param domain the domain of the negotiation
+     */
+    @SuppressWarnings("unchecked")
+    public BidCodec(Domain domain) {
+        this.domain = domain;
+        List<Issue> issues = domain.getIssues();
+        int issueCount = issues.size();
+        issueNumbers = new int[issueCount];
+        radix = new int[issueCount];
+        stride = new long[issueCount];
+        values = new ValueDiscrete[issueCount][];
+        valueIndex = new HashMap[issueCount];
+
+        long placeValue = 1;
+        for (int i = 0; i < issueCount; i++) {
+            IssueDiscrete issue = (IssueDiscrete) issues.get(i);
+            issueNumbers[i] = issue.getNumber();
+            radix[i] = issue.getNumberOfValues();
+            stride[i] = placeValue;
+            values[i] = new ValueDiscrete[radix[i]];
+            valueIndex[i] = new HashMap<ValueDiscrete, Integer>();
+            for (int v = 0; v < radix[i]; v++) {
+                values[i][v] = issue.getValue(v);
+                valueIndex[i].put(values[i][v], v);
+            }
+            if (radix[i] != 0 && placeValue > Long.MAX_VALUE / radix[i]) {
+                throw new IllegalArgumentException("Domain has too many possible bids to encode as a long");
+            }
+            placeValue *= radix[i];
+        }
+        size = placeValue;
+    }
+
+    /**
+     * A method to get the ordinal of a bid
+     * @param bid the bid to encode
+     * @return ordinal of the bid
+     */
+    public long encode(Bid bid) {
+        long ordinal = 0;
+        for (int i = 0; i < issueNumbers.length; i++) {
+            ordinal += valueIndex(bid, i) * stride[i];
+        }
+        return ordinal;
+    }
+
+    /**
+     * A method to build the bid for an ordinal
+     * @param ordinal the ordinal to decode
+     * @return the bid with that ordinal
+     */
+    public Bid decode(long ordinal) {
+        HashMap<Integer, Value> bidValues = new HashMap<Integer, Value>();
+        for (int i = 0; i < issueNumbers.length; i++) {
+            bidValues.put(issueNumbers[i], values[i][valueIndex(ordinal, i)]);
+        }
+        return new Bid(domain, bidValues);
+    }
+
+    /**
+     * A method to get the value index of an issue in a bid
+     * @param bid the bid
+     * @param issueIndex the position of the issue in the domain
+     * @return index of the bid's value for that issue
+     */
+    public int valueIndex(Bid bid, int issueIndex) {
+        return valueIndex[issueIndex].get((ValueDiscrete) bid.getValue(issueNumbers[issueIndex]));
+    }
+
+    /**
+     * A method to get the value index of an issue in an encoded bid
+     * @param ordinal the encoded bid
+     * @param issueIndex the position of the issue in the domain
+     * @return index of the bid's value for that issue
+     */
+    public int valueIndex(long ordinal, int issueIndex) {
+        return (int) ((ordinal / stride[issueIndex]) % radix[issueIndex]);
+    }
+
+    /**
+     * A method to get the ordinal of the bid with one issue changed to another value
+     * @param ordinal the encoded bid
+     * @param issueIndex the position of the issue in the domain
+     * @param valueIndex the index of the new value for that issue
+     * @return ordinal of the changed bid
+     */
+    public long withValue(long ordinal, int issueIndex, int valueIndex) {
+        return ordinal + (valueIndex - valueIndex(ordinal, issueIndex)) * stride[issueIndex];
+    }
+
+    public Domain getDomain() {
+        return domain;
+    }
+
+    /**
+     * @return total number of possible bids in the domain
+     */
+    public long size() {
+        return size;
+    }
+
+    public int getIssueCount() {
+        return issueNumbers.length;
+    }
+
+    public int getIssueNumber(int issueIndex) {
+        return issueNumbers[issueIndex];
+    }
+
+    public int getValueCount(int issueIndex) {
+        return radix[issueIndex];
+    }
+
+    public long getStride(int issueIndex) {
+        return stride[issueIndex];
+    }
+
+    public ValueDiscrete getValue(int issueIndex, int valueIndex) {
+        return values[issueIndex][valueIndex];
+    }
+}
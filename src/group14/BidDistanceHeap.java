@@ -0,0 +1,79 @@
+package group14;
+
+/**
+ * A binary min-heap of encoded bids by their distance to a point, held in primitive arrays
+ * Used to keep the candidate bids of a threshold band between turns, so only newly eligible bids need scoring
+ */
+final class BidDistanceHeap {
+
+    private final double[] distances;
+    private final long[] ordinals;
+    private int size;
+
+    /**
+     * @param capacity most bids the heap can hold
+     */
+    BidDistanceHeap(int capacity) {
+        distances = new double[capacity];
+        ordinals = new long[capacity];
+    }
+
+    void add(long ordinal, double distance) {
+        int position = size++;
+        // Move the new bid up until its parent is no further away
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (distances[parent] <= distance) {
+                break;
+            }
+            distances[position] = distances[parent];
+            ordinals[position] = ordinals[parent];
+            position = parent;
+        }
+        distances[position] = distance;
+        ordinals[position] = ordinal;
+    }
+
+    /**
+     * @return ordinal of the closest bid, the heap must not be empty
+     */
+    long peek() {
+        return ordinals[0];
+    }
+
+    /**
+     * Remove the closest bid, the heap must not be empty
+     */
+    void poll() {
+        size--;
+        double distance = distances[size];
+        long ordinal = ordinals[size];
+        int position = 0;
+        // Move the last bid down from the top until neither child is closer
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && distances[child + 1] < distances[child]) {
+                child++;
+            }
+            if (distances[child] >= distance) {
+                break;
+            }
+            distances[position] = distances[child];
+            ordinals[position] = ordinals[child];
+            position = child;
+        }
+        distances[position] = distance;
+        ordinals[position] = ordinal;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,86 @@
+package group14;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sampling of distinct encoded bids from a domain
+ */
+public final class BidSampler {
+
+    private BidSampler() {
+    }
+
+    /**
+     * A method to draw bids without replacement, so no bid appears twice in the sample
+     * Dense samples walk every ordinal once and keep each with the right probability (selection sampling),
+     * sparse samples draw random ordinals and redraw any duplicates
+     * @param domainSize number of possible bids in the domain
+     * @param sampleSize number of bids wanted, capped at the domain size
+     * @param random source of randomness
+     * @return distinct ordinals in ascending order
+     */
+    public static long[] sampleWithoutReplacement(long domainSize, int sampleSize, Random random) {
+        int k = (int) Math.min(sampleSize, domainSize);
+        long[] sample = new long[k];
+
+        if (domainSize <= 4L * k) {
+            // Knuth's algorithm S - each ordinal is kept with probability (still needed / still left)
+            int chosen = 0;
+            for (long ordinal = 0; ordinal < domainSize && chosen < k; ordinal++) {
+                if ((domainSize - ordinal) * random.nextDouble() < k - chosen) {
+                    sample[chosen++] = ordinal;
+                }
+            }
+            return sample;
+        }
+
+        // At most a quarter of the domain is sampled so duplicates are rare, draw until there are enough
+        int filled = 0;
+        while (filled < k) {
+            for (int i = filled; i < k; i++) {
+                sample[i] = (long) (random.nextDouble() * domainSize);
+            }
+            Arrays.sort(sample, 0, k);
+            filled = 0;
+            for (int i = 0; i < k; i++) {
+                if (i == 0 || sample[i] != sample[i - 1]) {
+                    sample[filled++] = sample[i];
+                }
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * A method to draw a stratified sample, with one random bid from each of sampleSize equal ranges of ordinals
+     * @param domainSize number of possible bids in the domain
+     * @param sampleSize number of bids wanted, which should be less than the domain size
+     * @param random source of randomness
+     * @return one ordinal from each range, in ascending order
+     */
+    public static long[] stratifiedSample(long domainSize, int sampleSize, Random random) {
+        long[] sample = new long[sampleSize];
+        double stratumSize = (double) domainSize / sampleSize;
+        for (int i = 0; i < sampleSize; i++) {
+            long stratumStart = (long) (i * stratumSize);
+            long stratumEnd = Math.min((long) ((i + 1) * stratumSize), domainSize);
+            sample[i] = stratumStart + (long) (random.nextDouble() * (stratumEnd - stratumStart));
+        }
+        return sample;
+    }
+
+    /**
+     * A method to shuffle ordinals in place with a Fisher-Yates shuffle
+     * @param values the ordinals to shuffle
+     * @param random source of randomness
+     */
+    public static void shuffle(long[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+}
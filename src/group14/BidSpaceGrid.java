@@ -0,0 +1,145 @@
+package group14;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * A uniform grid over the graph of the bid space, with agent utility on one axis and opponent utility on the other
+ * It answers which bid is closest to a point, such as the Nash point, by only looking at the cells around it
+ * The grid keeps references to the ordinal and agent utility columns it was built from, so they must not be changed
+ * afterwards, but takes its own copy of the opponent utility column, which is updated in place as the model changes
+ */
+public class BidSpaceGrid {
+
+    private static final int POINTS_PER_CELL = 4; // Average number of bids in a cell
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    private final long[] bidOrdinal;
+    private final double[] agentUtility;
+    private final double[] opponentUtility;
+    private final int cellsPerAxis;
+    private final double minAgentUtility;
+    private final double minOpponentUtility;
+    private final double cellWidth; // Agent utility covered by a cell
+    private final double cellHeight; // Opponent utility covered by a cell
+    private final int[] cellStart; // Position in points of the first bid of each cell, by row then column
+    private final int[] points; // Bid space indices grouped by cell
+
+    /**
+     * A constructor to build the grid over the first points of a bid space
+     * @param bidOrdinal ordinals of the bids
+     * @param agentUtility agent utilities of the bids
+     * @param opponentUtility opponent utilities of the bids
+     * @param size number of bids in the bid space
+     */
+    public BidSpaceGrid(long[] bidOrdinal, double[] agentUtility, double[] opponentUtility, int size) {
+        this.bidOrdinal = bidOrdinal;
+        this.agentUtility = agentUtility;
+        this.opponentUtility = Arrays.copyOf(opponentUtility, size);
+        cellsPerAxis = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.sqrt((double) size / POINTS_PER_CELL)));
+
+        double minAgent = Double.POSITIVE_INFINITY;
+        double maxAgent = Double.NEGATIVE_INFINITY;
+        double minOpponent = Double.POSITIVE_INFINITY;
+        double maxOpponent = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minAgent = Math.min(minAgent, agentUtility[i]);
+            maxAgent = Math.max(maxAgent, agentUtility[i]);
+            minOpponent = Math.min(minOpponent, opponentUtility[i]);
+            maxOpponent = Math.max(maxOpponent, opponentUtility[i]);
+        }
+        if (size == 0) {
+            minAgent = maxAgent = minOpponent = maxOpponent = 0;
+        }
+        minAgentUtility = minAgent;
+        minOpponentUtility = minOpponent;
+        // Cells are never zero sized, even if every bid has the same utility
+        cellWidth = Math.max(maxAgent - minAgent, 1e-9) / cellsPerAxis;
+        cellHeight = Math.max(maxOpponent - minOpponent, 1e-9) / cellsPerAxis;
+
+        // Counting sort of the bids by cell
+        int[] cellOf = new int[size];
+        cellStart = new int[cellsPerAxis * cellsPerAxis + 1];
+        for (int i = 0; i < size; i++) {
+            cellOf[i] = row(opponentUtility[i]) * cellsPerAxis + column(agentUtility[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cellsPerAxis * cellsPerAxis; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        points = new int[size];
+        int[] next = cellStart.clone();
+        for (int i = 0; i < size; i++) {
+            points[next[cellOf[i]]++] = i;
+        }
+    }
+
+    private int column(double agent) {
+        return clamp((int) ((agent - minAgentUtility) / cellWidth));
+    }
+
+    private int row(double opponent) {
+        return clamp((int) ((opponent - minOpponentUtility) / cellHeight));
+    }
+
+    private int clamp(int cell) {
+        return Math.max(0, Math.min(cellsPerAxis - 1, cell));
+    }
+
+    /**
+     * A method to find the bid closest to a point with at least a minimum agent utility
+     * Cells are searched in rings around the point, stopping once no unsearched cell could hold a closer bid
+     * @param agent agent utility of the point
+     * @param opponent opponent utility of the point
+     * @param minAgentUtility lowest agent utility a bid may have
+     * @param maxDistance bids must be strictly closer than this
+     * @param excluded bids which should be skipped, by ordinal
+     * @return ordinal of the closest bid, or -1 if there is none
+     */
+    public long nearest(double agent, double opponent, double minAgentUtility, double maxDistance,
+                        LongPredicate excluded) {
+        int centreColumn = column(agent);
+        int centreRow = row(opponent);
+        int firstColumn = column(minAgentUtility);
+        double bestDistanceSquared = maxDistance * maxDistance;
+        long best = -1;
+
+        for (int ring = 0; ring < cellsPerAxis; ring++) {
+            // Every cell in this ring or beyond is at least this far from the point
+            double ringDistance = (ring - 1) * Math.min(cellWidth, cellHeight);
+            if (ring > 0 && ringDistance * ringDistance >= bestDistanceSquared) {
+                break;
+            }
+            for (int row = centreRow - ring; row <= centreRow + ring; row++) {
+                if (row < 0 || row >= cellsPerAxis) {
+                    continue;
+                }
+                boolean edgeRow = row == centreRow - ring || row == centreRow + ring;
+                // Inside rows only have the two cells on the edge of the ring
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centreColumn - ring; column <= centreColumn + ring; column += Math.max(step, 1)) {
+                    if (column < firstColumn || column >= cellsPerAxis) {
+                        continue;
+                    }
+                    int cell = row * cellsPerAxis + column;
+                    for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                        int i = points[p];
+                        if (agentUtility[i] < minAgentUtility) {
+                            continue;
+                        }
+                        double agentDiff = agent - agentUtility[i];
+                        double opponentDiff = opponent - opponentUtility[i];
+                        double distanceSquared = agentDiff * agentDiff + opponentDiff * opponentDiff;
+                        // A distance of zero is the point itself, which has already been offered
+                        if (distanceSquared != 0 && distanceSquared < bestDistanceSquared
+                                && !excluded.test(bidOrdinal[i])) {
+                            bestDistanceSquared = distanceSquared;
+                            best = bidOrdinal[i];
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
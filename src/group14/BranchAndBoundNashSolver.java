@@ -0,0 +1,158 @@
+package group14;
+
+/**
+ * An exact solver for the Nash point of domains too big to score every bid
+ * Both the agent's estimated utility and the opponent model are additive over issues, so the utility
+ * product of any bid in a subtree is at most the product of the partial utilities plus the largest
+ * contributions the remaining issues could add to each
+ * Issues are assigned one at a time, and subtrees whose bound cannot beat the best bid found are pruned
+ */
+public class BranchAndBoundNashSolver {
+
+    private static final int DEADLINE_CHECK_INTERVAL = 4096; // Nodes visited between checks of the clock
+
+    private final BidCodec codec;
+    private final int issueCount;
+    private final int[] issueOrder; // Issue index assigned at each depth of the search
+    private final double[][] agentContribution; // By depth and value index
+    private final double[][] opponentContribution; // By depth and value index
+    private final int[][] valueOrder; // Values tried at each depth, most promising first
+    private final double[] remainingAgent; // Largest agent utility the issues from each depth onwards can add
+    private final double[] remainingOpponent; // Largest opponent utility the issues from each depth onwards can add
+    private final int[] assignment; // Value index chosen at each depth
+    private long bestOrdinal = -1;
+    private double bestProduct = -1;
+    private long deadline;
+    private long nodes;
+    private boolean timedOut;
+
+    /**
+     * A constructor to set up the solver against one version of the opponent model
+     * @param codec the codec for the bids of the negotiation domain
+     * @param agentUtilitySpace the compiled utility space for Agent Smith
+     * @param opponentModel the opponent model, which should not change while solving
+     */
+    public BranchAndBoundNashSolver(BidCodec codec, CompiledUtilityEvaluator agentUtilitySpace,
+                                    AgentSmithOpponentModel opponentModel) {
+        this.codec = codec;
+        issueCount = codec.getIssueCount();
+        issueOrder = new int[issueCount];
+        agentContribution = new double[issueCount][];
+        opponentContribution = new double[issueCount][];
+        valueOrder = new int[issueCount][];
+        remainingAgent = new double[issueCount + 1];
+        remainingOpponent = new double[issueCount + 1];
+        assignment = new int[issueCount];
+
+        // Issues with the biggest potential contributions are decided first, as they tighten the bound most
+        double[] maxAgent = new double[issueCount];
+        double[] maxOpponent = new double[issueCount];
+        for (int i = 0; i < issueCount; i++) {
+            issueOrder[i] = i;
+            maxAgent[i] = agentUtilitySpace.getMaxContribution(i);
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                double contribution = opponentModel.getIssueWeight(i) * opponentModel.getOptionScore(i, v);
+                maxOpponent[i] = Math.max(maxOpponent[i], contribution);
+            }
+        }
+        IndexSort.sort(issueOrder, 0, issueCount,
+                (a, b) -> Double.compare(maxAgent[b] + maxOpponent[b], maxAgent[a] + maxOpponent[a]));
+
+        for (int depth = 0; depth < issueCount; depth++) {
+            int issue = issueOrder[depth];
+            int values = codec.getValueCount(issue);
+            double[] agent = new double[values];
+            double[] opponent = new double[values];
+            int[] order = new int[values];
+            for (int v = 0; v < values; v++) {
+                agent[v] = agentUtilitySpace.getContribution(issue, v);
+                opponent[v] = opponentModel.getIssueWeight(issue) * opponentModel.getOptionScore(issue, v);
+                order[v] = v;
+            }
+            IndexSort.sort(order, 0, values, (a, b) -> Double.compare(agent[b] + opponent[b], agent[a] + opponent[a]));
+            agentContribution[depth] = agent;
+            opponentContribution[depth] = opponent;
+            valueOrder[depth] = order;
+        }
+        for (int depth = issueCount - 1; depth >= 0; depth--) {
+            remainingAgent[depth] = remainingAgent[depth + 1] + maxAgent[issueOrder[depth]];
+            remainingOpponent[depth] = remainingOpponent[depth + 1] + maxOpponent[issueOrder[depth]];
+        }
+    }
+
+    /**
+     * A method to give the solver a bid already known to be good, so more of the tree is pruned from the start
+     * @param ordinal ordinal of the bid
+     * @param product utility product of the bid
+     */
+    public void setIncumbent(long ordinal, double product) {
+        if (product > bestProduct) {
+            bestOrdinal = ordinal;
+            bestProduct = product;
+        }
+    }
+
+    /**
+     * A method to search for the bid with the greatest utility product
+     * @param deadline value of System.nanoTime() at which to give up
+     * @return true if the search finished, so the best bid is the exact Nash point
+     */
+    public boolean solve(long deadline) {
+        this.deadline = deadline;
+        nodes = 0;
+        timedOut = false;
+        search(0, 0, 0);
+        return !timedOut;
+    }
+
+    private void search(int depth, double agentUtility, double opponentUtility) {
+        if (timedOut) {
+            return;
+        }
+        if (depth == issueCount) {
+            double product = agentUtility * opponentUtility;
+            if (product > bestProduct) {
+                bestProduct = product;
+                bestOrdinal = assignedOrdinal();
+            }
+            return;
+        }
+        if (++nodes % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) {
+            timedOut = true;
+            return;
+        }
+
+        double[] agent = agentContribution[depth];
+        double[] opponent = opponentContribution[depth];
+        for (int v : valueOrder[depth]) {
+            double childAgentUtility = agentUtility + agent[v];
+            double childOpponentUtility = opponentUtility + opponent[v];
+            // No bid below this child can have a greater product than this bound
+            double bound = (childAgentUtility + remainingAgent[depth + 1])
+                    * (childOpponentUtility + remainingOpponent[depth + 1]);
+            if (bound > bestProduct) {
+                assignment[depth] = v;
+                search(depth + 1, childAgentUtility, childOpponentUtility);
+            }
+        }
+    }
+
+    private long assignedOrdinal() {
+        long ordinal = 0;
+        for (int depth = 0; depth < issueCount; depth++) {
+            ordinal += assignment[depth] * codec.getStride(issueOrder[depth]);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return ordinal of the bid with the greatest utility product found, or -1 if none
+     */
+    public long getBestOrdinal() {
+        return bestOrdinal;
+    }
+
+    public double getBestProduct() {
+        return bestProduct;
+    }
+}
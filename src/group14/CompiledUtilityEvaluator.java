@@ -0,0 +1,90 @@
+package group14;
+
+import genius.core.utility.AdditiveUtilitySpace;
+import genius.core.utility.EvaluatorDiscrete;
+
+/**
+ * A flattened copy of an additive utility space which scores encoded bids with plain array reads
+ * The weighted evaluation of every value is stored in a single table, with the values of each issue
+ * stored together, so scoring a bid is one read per issue and allocates nothing
+ * The table is a snapshot, so it needs compiling again if the utility space is changed
+ */
+public class CompiledUtilityEvaluator {
+
+    private final BidCodec codec;
+    private final double[] table; // Weighted evaluation for each issue and value
+    private final int[] offset; // Position of the first value of each issue in the table
+    private final double[] maxContribution; // Largest weighted evaluation of each issue
+
+    /**
+     * A constructor to compile an additive utility space
+     * @param codec the codec for the bids of the domain
+     * @param utilitySpace the additive utility space to compile
+     */
+    public CompiledUtilityEvaluator(BidCodec codec, AdditiveUtilitySpace utilitySpace) {
+        this.codec = codec;
+        int issueCount = codec.getIssueCount();
+        offset = new int[issueCount];
+        maxContribution = new double[issueCount];
+
+        int tableSize = 0;
+        for (int i = 0; i < issueCount; i++) {
+            offset[i] = tableSize;
+            tableSize += codec.getValueCount(i);
+        }
+
+        table = new double[tableSize];
+        for (int i = 0; i < issueCount; i++) {
+            int issueNumber = codec.getIssueNumber(i);
+            double weight = utilitySpace.getWeight(issueNumber);
+            EvaluatorDiscrete evaluator = (EvaluatorDiscrete) utilitySpace.getEvaluator(issueNumber);
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                double evaluation;
+                try {
+                    evaluation = evaluator.getEvaluation(codec.getValue(i, v));
+                } catch (Exception e) {
+                    // Values without an evaluation are worth nothing
+                    evaluation = 0;
+                }
+                table[offset[i] + v] = weight * evaluation;
+                maxContribution[i] = Math.max(maxContribution[i], table[offset[i] + v]);
+            }
+        }
+    }
+
+    /**
+     * A method to get the utility of an encoded bid
+     * @param ordinal the encoded bid
+     * @return utility of the bid
+     */
+    public double getUtility(long ordinal) {
+        double utility = 0;
+        for (int i = 0; i < offset.length; i++) {
+            utility += table[offset[i] + codec.valueIndex(ordinal, i)];
+        }
+        return utility;
+    }
+
+    /**
+     * A method to get the weighted evaluation one value adds to the utility of a bid
+     * @param issueIndex the position of the issue in the domain
+     * @param valueIndex the index of the value for that issue
+     * @return contribution of the value to the utility
+     */
+    public double getContribution(int issueIndex, int valueIndex) {
+        return table[offset[issueIndex] + valueIndex];
+    }
+
+    /**
+     * A method to get the most any value of an issue can add to the utility of a bid
+     * @param issueIndex the position of the issue in the domain
+     * @return largest contribution of the issue
+     */
+    public double getMaxContribution(int issueIndex) {
+        return maxContribution[issueIndex];
+    }
+
+    public BidCodec getCodec() {
+        return codec;
+    }
+}
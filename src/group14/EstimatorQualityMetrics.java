@@ -0,0 +1,251 @@
+package group14;
+
+import genius.core.utility.AbstractUtilitySpace;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * How closely an estimated utility space matches the real one, measured over a sample of distinct bids
+ * Both utilities of each sampled bid are worked out once, optionally in parallel, and every metric is computed
+ * from those two columns
+ */
+public final class EstimatorQualityMetrics {
+
+    private static final int PARALLEL_CHUNK_SIZE = 1024; // Bids scored by a single task before it is split
+
+    private final int sampleSize;
+    private final double spearman;
+    private final double kendallTau;
+    private final int kendallPairs;
+    private final double meanAbsoluteError;
+    private final int topK;
+    private final double topKOverlap;
+
+    private EstimatorQualityMetrics(int sampleSize, double spearman, double kendallTau, int kendallPairs,
+                                    double meanAbsoluteError, int topK, double topKOverlap) {
+        this.sampleSize = sampleSize;
+        this.spearman = spearman;
+        this.kendallTau = kendallTau;
+        this.kendallPairs = kendallPairs;
+        this.meanAbsoluteError = meanAbsoluteError;
+        this.topK = topK;
+        this.topKOverlap = topKOverlap;
+    }
+
+    /**
+     * A task to score a range of the sampled bids with both utility spaces, split in half until the range is small enough
+     * Each task writes only to its own range of the columns
+     */
+    private static class ScoreTask extends RecursiveAction {
+
+        private final AbstractUtilitySpace real;
+        private final CompiledUtilityEvaluator estimated;
+        private final long[] sample;
+        private final double[] realUtilities;
+        private final double[] estimatedUtilities;
+        private final int from;
+        private final int to;
+
+        ScoreTask(AbstractUtilitySpace real, CompiledUtilityEvaluator estimated, long[] sample,
+                  double[] realUtilities, double[] estimatedUtilities, int from, int to) {
+            this.real = real;
+            this.estimated = estimated;
+            this.sample = sample;
+            this.realUtilities = realUtilities;
+            this.estimatedUtilities = estimatedUtilities;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    realUtilities[i] = real.getUtility(estimated.getCodec().decode(sample[i]));
+                    estimatedUtilities[i] = estimated.getUtility(sample[i]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScoreTask(real, estimated, sample, realUtilities, estimatedUtilities, from, middle),
+                        new ScoreTask(real, estimated, sample, realUtilities, estimatedUtilities, middle, to));
+            }
+        }
+    }
+
+    /**
+     * A method to measure an estimated utility space against the real one
+     * @param real the real utility space
+     * @param estimated the compiled estimated utility space
+     * @param sampleSize number of distinct bids to sample, capped at the domain size
+     * @param kendallPairs number of random pairs of sampled bids Kendall's tau is worked out over
+     * @param topK number of best bids compared for the top-k overlap, capped at the sample size
+     * @param parallelism threads used to score the sample, 1 or less scores on the calling thread
+     * @param random source of randomness for the sample and pairs
+     * @return the metrics
+     */
+    public static EstimatorQualityMetrics evaluate(AbstractUtilitySpace real, CompiledUtilityEvaluator estimated,
+                                                   int sampleSize, int kendallPairs, int topK, int parallelism,
+                                                   Random random) {
+        long[] sample = BidSampler.sampleWithoutReplacement(estimated.getCodec().size(), sampleSize, random);
+        int n = sample.length;
+        double[] realUtilities = new double[n];
+        double[] estimatedUtilities = new double[n];
+        ScoreTask task = new ScoreTask(real, estimated, sample, realUtilities, estimatedUtilities, 0, n);
+        if (parallelism <= 1 || n <= PARALLEL_CHUNK_SIZE) {
+            task.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        double absoluteError = 0;
+        for (int i = 0; i < n; i++) {
+            absoluteError += Math.abs(realUtilities[i] - estimatedUtilities[i]);
+        }
+
+        int[] realOrder = sortedOrder(realUtilities);
+        int[] estimatedOrder = sortedOrder(estimatedUtilities);
+        double spearman = correlation(ranks(realUtilities, realOrder), ranks(estimatedUtilities, estimatedOrder));
+
+        // Kendall's tau over random pairs, tied pairs count as neither concordant nor discordant
+        int concordance = 0;
+        int pairs = n < 2 ? 0 : kendallPairs;
+        for (int p = 0; p < pairs; p++) {
+            int a = random.nextInt(n);
+            int b = random.nextInt(n - 1);
+            if (b >= a) {
+                b++;
+            }
+            concordance += Integer.signum(Double.compare(realUtilities[a], realUtilities[b]))
+                    * Integer.signum(Double.compare(estimatedUtilities[a], estimatedUtilities[b]));
+        }
+
+        // Share of the real best k bids of the sample which are also in the estimated best k
+        int k = Math.min(topK, n);
+        boolean[] realTop = new boolean[n];
+        for (int i = n - k; i < n; i++) {
+            realTop[realOrder[i]] = true;
+        }
+        int overlap = 0;
+        for (int i = n - k; i < n; i++) {
+            if (realTop[estimatedOrder[i]]) {
+                overlap++;
+            }
+        }
+
+        return new EstimatorQualityMetrics(n, spearman, pairs == 0 ? Double.NaN : (double) concordance / pairs,
+                pairs, n == 0 ? Double.NaN : absoluteError / n, k, k == 0 ? Double.NaN : (double) overlap / k);
+    }
+
+    /**
+     * @return indices of the utilities in ascending order of utility
+     */
+    private static int[] sortedOrder(double[] utilities) {
+        int[] order = new int[utilities.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IndexSort.sort(order, 0, order.length, (a, b) -> Double.compare(utilities[a], utilities[b]));
+        return order;
+    }
+
+    /**
+     * @return rank of each utility, tied utilities sharing the mean of their ranks
+     */
+    private static double[] ranks(double[] utilities, int[] order) {
+        double[] ranks = new double[utilities.length];
+        int start = 0;
+        while (start < order.length) {
+            int end = start + 1;
+            while (end < order.length && utilities[order[end]] == utilities[order[start]]) {
+                end++;
+            }
+            double rank = (start + end - 1) / 2d;
+            for (int i = start; i < end; i++) {
+                ranks[order[i]] = rank;
+            }
+            start = end;
+        }
+        return ranks;
+    }
+
+    /**
+     * @return Pearson correlation of the two columns, or NaN if either is constant
+     */
+    private static double correlation(double[] x, double[] y) {
+        int n = x.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+            meanY += y[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        double covariance = 0;
+        double varianceX = 0;
+        double varianceY = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (x[i] - meanX) * (y[i] - meanY);
+            varianceX += (x[i] - meanX) * (x[i] - meanX);
+            varianceY += (y[i] - meanY) * (y[i] - meanY);
+        }
+        return covariance / Math.sqrt(varianceX * varianceY);
+    }
+
+    /**
+     * @return number of distinct bids the metrics were measured over
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return Spearman rank correlation between the real and estimated utilities
+     */
+    public double getSpearman() {
+        return spearman;
+    }
+
+    /**
+     * @return Kendall's tau between the real and estimated utilities, over random pairs of sampled bids
+     */
+    public double getKendallTau() {
+        return kendallTau;
+    }
+
+    public int getKendallPairs() {
+        return kendallPairs;
+    }
+
+    /**
+     * @return mean absolute difference between the real and estimated utilities
+     */
+    public double getMeanAbsoluteError() {
+        return meanAbsoluteError;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    /**
+     * @return share of the real best k sampled bids which the estimate also puts in its best k
+     */
+    public double getTopKOverlap() {
+        return topKOverlap;
+    }
+
+    @Override
+    public String toString() {
+        return "EstimatorQualityMetrics{sampleSize=" + sampleSize + ", spearman=" + spearman
+                + ", kendallTau=" + kendallTau + ", meanAbsoluteError=" + meanAbsoluteError
+                + ", top" + topK + "Overlap=" + topKOverlap + "}";
+    }
+}
@@ -0,0 +1,92 @@
+package group14;
+
+/**
+ * Sorting of primitive index arrays by an ordering on the indices
+ * Used to order columns of bid data without boxing every index or moving the columns themselves
+ */
+final class IndexSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * An ordering on two indices, in the style of a Comparator but without boxing
+     */
+    interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * Sort a range of an index array in place
+     * The sort is not stable, so the comparator should break ties if the order of equal indices matters
+     * @param index the indices to sort
+     * @param from first position to sort, inclusive
+     * @param to last position to sort, exclusive
+     * @param comparator ordering on the indices
+     */
+    static void sort(int[] index, int from, int to, IndexComparator comparator) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            // Move the median of three into the middle so the pivot is never the last element
+            int middle = from + ((to - from - 1) >>> 1);
+            swap(index, middle, medianOfThree(index, from, middle, to - 1, comparator));
+            int pivot = index[middle];
+            // Hoare partition around the pivot value
+            int i = from - 1;
+            int j = to;
+            while (true) {
+                do {
+                    i++;
+                } while (comparator.compare(index[i], pivot) < 0);
+                do {
+                    j--;
+                } while (comparator.compare(index[j], pivot) > 0);
+                if (i >= j) {
+                    break;
+                }
+                swap(index, i, j);
+            }
+            // Recurse into the smaller half so the stack stays logarithmic
+            if (j + 1 - from < to - j - 1) {
+                sort(index, from, j + 1, comparator);
+                from = j + 1;
+            } else {
+                sort(index, j + 1, to, comparator);
+                to = j + 1;
+            }
+        }
+        insertionSort(index, from, to, comparator);
+    }
+
+    private static void insertionSort(int[] index, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int value = index[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(index[j], value) > 0) {
+                index[j + 1] = index[j];
+                j--;
+            }
+            index[j + 1] = value;
+        }
+    }
+
+    private static int medianOfThree(int[] index, int a, int b, int c, IndexComparator comparator) {
+        if (comparator.compare(index[a], index[b]) < 0) {
+            if (comparator.compare(index[b], index[c]) < 0) {
+                return b;
+            }
+            return comparator.compare(index[a], index[c]) < 0 ? c : a;
+        }
+        if (comparator.compare(index[a], index[c]) < 0) {
+            return a;
+        }
+        return comparator.compare(index[b], index[c]) < 0 ? c : b;
+    }
+
+    private static void swap(int[] index, int i, int j) {
+        int tmp = index[i];
+        index[i] = index[j];
+        index[j] = tmp;
+    }
+}
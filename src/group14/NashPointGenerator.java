@@ -1,75 +1,59 @@
 package group14;
 
 import genius.core.Bid;
-import genius.core.BidIterator;
-import genius.core.Domain;
-import genius.core.utility.UtilitySpace;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A class to generate the estimated Nash point given the current negotiation domain, the estimated utility space
  * for Agent Smith, and the estimated opponent model
+ *
+ * The bid space is held as parallel columns rather than one object per bid, so each point of the
+ * graph of the bid space costs an encoded bid and two utilities
+ *
+ * Domains with more bids than ITERATION_LIMIT are covered by a stratified sample, and the Nash point
+ * of the sample is refined with an anytime local search and then an exact branch and bound search over
+ * the whole domain
+ *
+ * The Nash point can be computed on a background worker from snapshots of the opponent model,
+ * with the latest result published as an immutable estimate that can be read at any time
  */
 public class NashPointGenerator {
 
     /**
-     * A point for a bilateral negotiation which can be interpreted as a point on a graph of the bid space
-     * Each point is associated with a bid and the utilities of each agent
+     * The result of a Nash point computation
+     * The opponent model it was computed from is kept so distances are measured against the same model
      */
-    private class BidPoint {
+    public static final class NashEstimate {
 
-        private Bid bid;
-        private double agentUtility;
-        private double opponentUtility;
+        private final long ordinal;
+        private final Bid bid;
+        private final double agentUtility;
+        private final double opponentUtility;
+        private final AgentSmithOpponentModel opponentModel;
+        private final BidSpaceGrid bidSpaceGrid;
 
-        /**
-         * A constructor to build a bid point form a bid and the associated utilities
-         *
-         * @param bid             the bid to represent
-         * @param agentUtility    the utility of Agent Smith for that bid
-         * @param opponentUtility the utility of the opponent for that bid
-         */
-        public BidPoint(Bid bid, double agentUtility, double opponentUtility) {
+        private NashEstimate(long ordinal, Bid bid, double agentUtility, double opponentUtility,
+                             AgentSmithOpponentModel opponentModel, BidSpaceGrid bidSpaceGrid) {
+            this.ordinal = ordinal;
             this.bid = bid;
             this.agentUtility = agentUtility;
             this.opponentUtility = opponentUtility;
+            this.opponentModel = opponentModel;
+            this.bidSpaceGrid = bidSpaceGrid;
         }
 
-        /**
-         * A method to determine is this bid point is dominated by another
-         * To dominate, the other bid point must have utilities which are greater than or equal to this one
-         * with at least one value strictly greater
-         *
-         * @param other the bid point to compare against
-         * @return if this bid point is dominated by the other
-         */
-        public boolean isDominatedBy(BidPoint other) {
-            boolean dominated = false;
-            if (other != this) {
-                if ((other.getAgentUtility() < getAgentUtility()) || (other.getOpponentUtility() < getOpponentUtility())) {
-                    // One of the utilities is smaller
-                    dominated = false;
-                } else if ((other.getAgentUtility() > getAgentUtility()) || (other.getOpponentUtility() > getOpponentUtility())) {
-                    // At least one utility is strictly greater
-                    dominated = true;
-                }
-            }
-            return dominated;
-        }
-
-        /**
-         * Returning the product of the agent and opponent utilities for this bid point
-         * If reservation value is zero for both, this can be used to calculate the Nash point
-         *
-         * @return the product of the utilities
-         */
-        public double getUtilityProduct() {
-            return agentUtility * opponentUtility;
+        public long getOrdinal() {
+            return ordinal;
         }
 
         public Bid getBid() {
@@ -84,93 +68,300 @@ public class NashPointGenerator {
             return opponentUtility;
         }
 
-        public void setOpponentUtility(double utility) {
-            this.opponentUtility = utility;
+        public AgentSmithOpponentModel getOpponentModel() {
+            return opponentModel;
+        }
+
+        /**
+         * @return grid over the bid space as it was scored for this estimate
+         */
+        public BidSpaceGrid getBidSpaceGrid() {
+            return bidSpaceGrid;
         }
     }
 
-    private Domain domain;
-    private UtilitySpace agentUtilitySpace;
+    private BidCodec codec;
+    private CompiledUtilityEvaluator agentUtilitySpace;
     private AgentSmithOpponentModel opponentModel;
-    private List<BidPoint> bidSpace; // All bid points
-    private List<BidPoint> paretoFrontier;
-    private BidPoint nashPoint;
-    private static final int ITERATION_LIMIT = 25000; // Maximum number of iterations before it cuts off
+    // Bid space - point i is the bid with ordinal bidOrdinal[i] and the utilities of each agent for it
+    // The ordinal and agent utility columns never change once created, and a new opponent utility column
+    // is made for each update, so published grids can keep using them
+    private long[] bidOrdinal;
+    private double[] agentUtility;
+    private double[] opponentUtility;
+    private int bidSpaceSize;
+    private int[] paretoFrontier; // Frontier point indices in ascending order of agent utility, replaced on each update
+    private int nashPoint = -1; // Index of the Nash point in the bid space
+    private static final int ITERATION_LIMIT = 1 << 18; // Maximum number of bids held in the bid space
+    private long searchTimeBudget = 50; // Milliseconds given to refining the Nash point of a sampled bid space
+    private long exactSearchTimeBudget = 250; // Milliseconds given to proving the refined Nash point is exact
+    private Random random = new Random();
     private boolean bidSpaceUpdated;
+    private long scoredRankSignature; // Rank signature of the opponent model the bid space was last scored with
+    // Opponent model the opponent utility column was scored with, by issue index and value index
+    private double[] scoredWeights;
+    private double[][] scoredScores;
+    private boolean[] changedIssues;
+    // Largest move of any issue weight before a full rescore is needed rather than applying score changes
+    private static final double WEIGHT_TOLERANCE = 0.01;
+    private static final int PARALLEL_CHUNK_SIZE = 4096; // Bids scored by a single task before it is split
+    private int parallelism = 1; // Threads used to score the bid space, 1 scores on the calling thread
+    private ForkJoinPool pool;
+    private final AtomicReference<NashEstimate> latestEstimate = new AtomicReference<NashEstimate>();
+    private final AtomicReference<AgentSmithOpponentModel> pendingModel = new AtomicReference<AgentSmithOpponentModel>();
+    private ExecutorService worker;
+    private volatile boolean closed; // Set once the negotiation has ended
+
+    /**
+     * A task to score a range of the bid space, split in half until the range is small enough
+     * Each task writes only to its own range of the preallocated columns
+     */
+    private class ScoreTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final boolean scoreAgent;
+
+        /**
+         * @param from first point to score, inclusive
+         * @param to last point to score, exclusive
+         * @param scoreAgent whether agent utilities need scoring as well as opponent utilities
+         */
+        ScoreTask(int from, int to, boolean scoreAgent) {
+            this.from = from;
+            this.to = to;
+            this.scoreAgent = scoreAgent;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                scoreRange(from, to, scoreAgent);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScoreTask(from, middle, scoreAgent), new ScoreTask(middle, to, scoreAgent));
+            }
+        }
+    }
 
     /**
      * A constructor to set the attributes needed to calculate the nash point
-     * @param domain the domain of the negotiation
-     * @param agentUtilitySpace the utility space for Agent Smith - this should not change after initially estimated
+     * @param codec the codec for the bids of the negotiation domain
+     * @param agentUtilitySpace the compiled utility space for Agent Smith - this should not change after initially estimated
      * @param opponentModel the opponent model for the opponent - this will change during the negotiation
      */
-    public NashPointGenerator(Domain domain, UtilitySpace agentUtilitySpace, AgentSmithOpponentModel opponentModel) {
-        this.domain = domain;
+    public NashPointGenerator(BidCodec codec, CompiledUtilityEvaluator agentUtilitySpace, AgentSmithOpponentModel opponentModel) {
+        this.codec = codec;
         this.agentUtilitySpace = agentUtilitySpace;
         this.opponentModel = opponentModel;
-        paretoFrontier = new ArrayList<BidPoint>();
+        paretoFrontier = new int[0];
     }
 
     /**
      * A method to create all the bid points
+     * If the domain is too big, the bid space is a stratified sample with one random bid from each
+     * of ITERATION_LIMIT equal ranges of ordinals
      */
     private void createBidSpace() {
-        bidSpace = new ArrayList<BidPoint>();
-        BidIterator iterator = new BidIterator(domain);
-        int iterations = 0;
-
-        while (iterator.hasNext() && iterations < ITERATION_LIMIT) {
-            Bid bid = iterator.next();
-            bidSpace.add(new BidPoint(bid, agentUtilitySpace.getUtility(bid), opponentModel.opponentBidUtility(bid)));
-            iterations++;
+        bidSpaceSize = (int) Math.min(codec.size(), ITERATION_LIMIT);
+        agentUtility = new double[bidSpaceSize];
+        opponentUtility = new double[bidSpaceSize];
+
+        if (isSampled()) {
+            bidOrdinal = BidSampler.stratifiedSample(codec.size(), bidSpaceSize, random);
+        } else {
+            bidOrdinal = new long[bidSpaceSize];
+            for (int i = 0; i < bidSpaceSize; i++) {
+                bidOrdinal[i] = i;
+            }
         }
+        scoreBidSpace(true);
         bidSpaceUpdated = true;
     }
 
     /**
      * A method to update the bid space
      * This should be called whenever the opponent utility space is modified
+     * If the opponent model still ranks every option and issue the same way and the issue weights have barely
+     * moved since the bid space was fully scored, the bid space is not rescored and the last frontier and
+     * Nash point are kept
+     * If only some option scores have changed and the issue weights have barely moved, only the bids
+     * with those values are rescored
      * @param opponentModel the estimated model for the opponent
      */
-    public void updateBidSpace(AgentSmithOpponentModel opponentModel) {
-        this.opponentModel = opponentModel;
-        if (bidSpace == null) {
+    public synchronized void updateBidSpace(AgentSmithOpponentModel opponentModel) {
+        long rankSignature = opponentModel.getRankSignature();
+        if (bidOrdinal == null) {
+            this.opponentModel = opponentModel;
             createBidSpace();
+            recordScoredModel();
         } else {
-            for (BidPoint bp : bidSpace) {
-                bp.setOpponentUtility(this.opponentModel.opponentBidUtility(bp.getBid()));
+            // Weights can move a long way without any rank changing, so drift is checked before anything is skipped
+            boolean weightsMoved = opponentModel.findLargestWeightChange(scoredWeights) > WEIGHT_TOLERANCE;
+            if (!weightsMoved && rankSignature == scoredRankSignature) {
+                return;
+            }
+            if (weightsMoved) {
+                this.opponentModel = opponentModel;
+                scoreBidSpace(false);
+                recordScoredModel();
+            } else {
+                // The column keeps the weights it was fully scored with, so the frontier, the refined search and
+                // the published estimate all use a copy of the model with those same weights
+                this.opponentModel = opponentModel.withIssueWeights(scoredWeights);
+                applyScoreChanges();
             }
         }
+        scoredRankSignature = rankSignature;
         bidSpaceUpdated = true;
     }
 
+    /**
+     * A method to remember the opponent model the bid space has just been scored with
+     */
+    private void recordScoredModel() {
+        int issueCount = codec.getIssueCount();
+        if (scoredWeights == null) {
+            scoredWeights = new double[issueCount];
+            scoredScores = new double[issueCount][];
+            changedIssues = new boolean[issueCount];
+            for (int i = 0; i < issueCount; i++) {
+                scoredScores[i] = new double[codec.getValueCount(i)];
+            }
+        }
+        for (int i = 0; i < issueCount; i++) {
+            scoredWeights[i] = opponentModel.getIssueWeight(i);
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                scoredScores[i][v] = opponentModel.getOptionScore(i, v);
+            }
+        }
+    }
+
+    /**
+     * A method to rescore only the bids whose values have changed score since the bid space was scored
+     * Weights are kept as they were when the bid space was fully scored, so each changed value
+     * adds the same amount to the utility of every bid containing it
+     * The opponent model must already have been given those weights
+     * Over the whole domain, only the blocks of bids holding a changed value are touched, so the cost is proportional
+     * to the change - a sampled bid space has no block structure, so each of its bids is checked
+     */
+    private void applyScoreChanges() {
+        opponentModel.findScoreChanges(scoredScores, changedIssues);
+        // Published grids have their own copy of the column, so it is changed in place
+        for (int i = 0; i < codec.getIssueCount(); i++) {
+            if (!changedIssues[i]) {
+                continue;
+            }
+            double[] delta = new double[codec.getValueCount(i)];
+            for (int v = 0; v < delta.length; v++) {
+                double score = opponentModel.getOptionScore(i, v);
+                delta[v] = scoredWeights[i] * (score - scoredScores[i][v]);
+                scoredScores[i][v] = score;
+            }
+            if (isSampled()) {
+                for (int p = 0; p < bidSpaceSize; p++) {
+                    opponentUtility[p] += delta[codec.valueIndex(bidOrdinal[p], i)];
+                }
+            } else {
+                // The bid space is the whole domain in ordinal order, so the bids with a value are whole blocks
+                // of stride bids, repeating every stride * number of values
+                int stride = (int) codec.getStride(i);
+                int period = stride * delta.length;
+                for (int v = 0; v < delta.length; v++) {
+                    if (delta[v] == 0) {
+                        continue;
+                    }
+                    for (int block = v * stride; block < bidSpaceSize; block += period) {
+                        for (int p = block; p < block + stride; p++) {
+                            opponentUtility[p] += delta[v];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A method to score every point of the bid space, in parallel if more than one thread is allowed
+     * @param scoreAgent whether agent utilities need scoring as well as opponent utilities
+     */
+    private void scoreBidSpace(boolean scoreAgent) {
+        // Lazily computed parts of the opponent model must be ready before threads start reading it
+        opponentModel.refresh();
+        if (parallelism <= 1 || bidSpaceSize <= PARALLEL_CHUNK_SIZE) {
+            scoreRange(0, bidSpaceSize, scoreAgent);
+        } else {
+            if (pool == null) {
+                pool = new ForkJoinPool(parallelism);
+            }
+            pool.invoke(new ScoreTask(0, bidSpaceSize, scoreAgent));
+        }
+    }
+
+    /**
+     * A method to score a range of points of the bid space
+     * @param from first point to score, inclusive
+     * @param to last point to score, exclusive
+     * @param scoreAgent whether agent utilities need scoring as well as opponent utilities
+     */
+    private void scoreRange(int from, int to, boolean scoreAgent) {
+        for (int i = from; i < to; i++) {
+            if (scoreAgent) {
+                agentUtility[i] = agentUtilitySpace.getUtility(bidOrdinal[i]);
+            }
+            opponentUtility[i] = opponentModel.opponentBidUtility(bidOrdinal[i]);
+        }
+    }
+
+    /**
+     * A method to set how many threads are used to score the bid space
+     * This should be 1 when sessions are already run concurrently, e.g. in a tournament
+     * @param parallelism number of threads, 1 or less scores on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism != this.parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
     /**
      * A method to get the bid at the nash point
      * @return the nash point bid
      */
-    public Bid getNashPoint(){
+    public synchronized Bid getNashPoint(){
         // Only compute if bid space has been updated since last computation or no Nash point exists
-        if (bidSpaceUpdated || nashPoint == null) {
+        if (bidSpaceUpdated || nashPoint == -1) {
             bidSpaceUpdated = false;
 
-            // Calculate pareto frontier by finding strictly dominating bids
-            for (BidPoint bp : bidSpace) {
-                addToFrontier(bp);
-            }
+            // Frontier is rebuilt from scratch as opponent utilities may have moved
+            paretoFrontier = computeParetoFrontier();
 
             double maxUtilityProduct = -1;
             double currentUtilityProduct = 0;
             // Loop through pareto frontier and find Nash point
-            for (BidPoint bp : paretoFrontier) {
-                currentUtilityProduct = bp.getUtilityProduct();
+            // If reservation value is zero for both, the Nash point has the greatest product of utilities
+            for (int point : paretoFrontier) {
+                currentUtilityProduct = agentUtility[point] * opponentUtility[point];
                 if (currentUtilityProduct > maxUtilityProduct) {
-                    nashPoint = bp;
+                    nashPoint = point;
                     maxUtilityProduct = currentUtilityProduct;
                 }
             }
+            if (nashPoint != -1) {
+                long nashOrdinal = bidOrdinal[nashPoint];
+                if (isSampled()) {
+                    nashOrdinal = refineSampledNashPoint();
+                }
+                // Utilities are copied into the estimate as the columns are overwritten by the next update
+                latestEstimate.set(new NashEstimate(nashOrdinal, codec.decode(nashOrdinal),
+                        agentUtilitySpace.getUtility(nashOrdinal), opponentModel.opponentBidUtility(nashOrdinal),
+                        opponentModel, new BidSpaceGrid(bidOrdinal, agentUtility, opponentUtility, bidSpaceSize)));
+            }
         }
 
-        /*if (nashPoint == null) {
+        /*if (nashPoint == -1) {
         } else {
             try {
                 PrintWriter pw = new PrintWriter(new File("bids.csv"));
@@ -184,18 +375,18 @@ public class NashPointGenerator {
                 sb.append("Type");
                 sb.append('\n');
 
-                for (BidPoint bp : bidSpace) {
+                for (int i = 0; i < bidSpaceSize; i++) {
                     String type = "Normal";
-                    if (bp.equals(nashPoint)) {
+                    if (i == nashPoint) {
                         type = "Nash";
-                    } else if (paretoFrontier.contains(bp)) {
+                    } else if (Arrays.stream(paretoFrontier).anyMatch(f -> f == i)) {
                         type = "Pareto";
                     }
-                    sb.append(bp.getAgentUtility());
+                    sb.append(agentUtility[i]);
                     sb.append(',');
-                    sb.append(bp.getOpponentUtility());
+                    sb.append(opponentUtility[i]);
                     sb.append(',');
-                    sb.append(bp.getBid().toString().replace(',',';'));
+                    sb.append(codec.decode(bidOrdinal[i]).toString().replace(',',';'));
                     sb.append(',');
                     sb.append(type);
                     sb.append('\n');
@@ -208,62 +399,155 @@ public class NashPointGenerator {
             }
 
         }*/
-        return nashPoint == null ? null : nashPoint.getBid();
+        return nashPoint == -1 ? null : latestEstimate.get().getBid();
     }
 
     /**
-     * Add a bid point to the pareto frontier by finding the strictly dominating bids
-     * @param bp bid point to add
+     * A method to ask the background worker to recompute the Nash point from a snapshot of the opponent model
+     * If the worker is busy, only the most recent snapshot is kept for its next run
+     * @param opponentModelSnapshot a snapshot of the opponent model which will not be changed again
      */
-    private void addToFrontier(BidPoint bp) {
-        for (BidPoint f : paretoFrontier) {
-            // If this bid point is dominated, it can't be added so return
-            if (bp.isDominatedBy(f)) {
-                return;
+    public void submit(AgentSmithOpponentModel opponentModelSnapshot) {
+        if (closed) {
+            return;
+        }
+        if (pendingModel.getAndSet(opponentModelSnapshot) == null) {
+            if (worker == null) {
+                worker = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "AgentSmith-NashPointGenerator");
+                    // The worker should never keep the negotiation running
+                    thread.setDaemon(true);
+                    return thread;
+                });
             }
-            // If a point in the frontier is dominated, it needs replacing
-            if (f.isDominatedBy(bp)) {
-                removeDominated(bp, f);
-                return;
+            worker.execute(this::computePending);
+        }
+    }
+
+    /**
+     * A method to stop the background worker and the scoring threads, once the negotiation has ended
+     * Any computation still running is interrupted and nothing more can be submitted
+     */
+    public void close() {
+        closed = true;
+        pendingModel.set(null);
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A method run by the background worker to compute the Nash point for the latest submitted snapshot
+     */
+    private void computePending() {
+        AgentSmithOpponentModel snapshot = pendingModel.getAndSet(null);
+        if (snapshot != null) {
+            try {
+                updateBidSpace(snapshot);
+                getNashPoint();
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
-        // Otherwise the bid must have been equal so add anyway
-        paretoFrontier.add(bp);
     }
 
     /**
-     * Removing a dominated bid from the frontier and replacing it with the new dominating bid
-     * @param bidPointToAdd the dominating bid point to add
-     * @param bidPointToRemove the frontier point to remove
+     * A method to get the most recently completed Nash point computation
+     * @return latest Nash estimate, or null if none has completed yet
+     */
+    public NashEstimate getLatestEstimate() {
+        return latestEstimate.get();
+    }
+
+    /**
+     * @return true if the bid space only holds a sample of the domain
      */
-    private void removeDominated(BidPoint bidPointToAdd, BidPoint bidPointToRemove) {
-        // A bid has been dominated - the old one needs removing and the new one adding
-        List<BidPoint> frontierPointsToRemove = new ArrayList<BidPoint>();
-        paretoFrontier.remove(bidPointToRemove);
-        // Check if any others are also dominated by this new bid
-        for (BidPoint f : paretoFrontier) {
-            if (f.isDominatedBy(bidPointToAdd)) {
-                frontierPointsToRemove.add(f);
+    private boolean isSampled() {
+        return bidSpaceSize < codec.size();
+    }
+
+    /**
+     * A method to improve the Nash point of a sampled bid space with a search over the whole domain
+     * Local searches start from the frontier points with the greatest utility products, until the time budget
+     * runs out, and the best bid found seeds a branch and bound search for the exact Nash point
+     * @return ordinal of the best bid found
+     */
+    private long refineSampledNashPoint() {
+        long deadline = System.nanoTime() + searchTimeBudget * 1000000L;
+        AnytimeNashSearch search = new AnytimeNashSearch(codec, agentUtilitySpace, opponentModel);
+
+        int[] starts = paretoFrontier.clone();
+        IndexSort.sort(starts, 0, starts.length, (a, b) -> Double.compare(
+                agentUtility[b] * opponentUtility[b], agentUtility[a] * opponentUtility[a]));
+        for (int start : starts) {
+            if (System.nanoTime() >= deadline) {
+                break;
             }
+            search.climb(bidOrdinal[start], deadline);
+        }
+
+        BranchAndBoundNashSolver solver = new BranchAndBoundNashSolver(codec, agentUtilitySpace, opponentModel);
+        solver.setIncumbent(bidOrdinal[nashPoint], agentUtility[nashPoint] * opponentUtility[nashPoint]);
+        if (search.getBestOrdinal() != -1) {
+            solver.setIncumbent(search.getBestOrdinal(), search.getBestProduct());
         }
-        paretoFrontier.removeAll(frontierPointsToRemove);
-        paretoFrontier.add(bidPointToAdd);
+        // If the budget runs out first, the solver still holds the best bid it has seen
+        solver.solve(System.nanoTime() + exactSearchTimeBudget * 1000000L);
+        return solver.getBestOrdinal();
+    }
+
+    /**
+     * A method to set how long is spent refining the Nash point when the domain is too big to score every bid
+     * @param searchTimeBudget time budget in milliseconds
+     */
+    public void setSearchTimeBudget(long searchTimeBudget) {
+        this.searchTimeBudget = searchTimeBudget;
+    }
+
+    /**
+     * A method to set how long the branch and bound search may spend finding the exact Nash point
+     * @param exactSearchTimeBudget time budget in milliseconds
+     */
+    public void setExactSearchTimeBudget(long exactSearchTimeBudget) {
+        this.exactSearchTimeBudget = exactSearchTimeBudget;
     }
 
     /**
-     * A method to get the distance of any bid to the calculated Nash point
-     * @param b bid
-     * @return distance of bid to Nash point
+     * Compute the pareto frontier of the bid space with a sort and sweep
+     * Points are visited from highest to lowest agent utility, and a point is only on the frontier
+     * if its opponent utility beats every point visited before it
+     * @return frontier point indices in ascending order of agent utility
      */
-    public double distanceToNash(Bid b) {
-        double distance = -1;
-        if (nashPoint != null) {
-            double agentUtilDiff = nashPoint.getAgentUtility() - agentUtilitySpace.getUtility(b);
-            double opponentUtilDiff = nashPoint.getOpponentUtility() - opponentModel.opponentBidUtility(b);
-            // calculate Euclidean distance to Nash point
-            distance = Math.sqrt(((Math.pow(agentUtilDiff, 2)) + (Math.pow(opponentUtilDiff, 2))));
+    private int[] computeParetoFrontier() {
+        int[] points = new int[bidSpaceSize];
+        for (int i = 0; i < bidSpaceSize; i++) {
+            points[i] = i;
+        }
+        // Highest agent utility first, with ties broken by highest opponent utility first
+        IndexSort.sort(points, 0, bidSpaceSize, (a, b) -> {
+            int order = Double.compare(agentUtility[b], agentUtility[a]);
+            return order != 0 ? order : Double.compare(opponentUtility[b], opponentUtility[a]);
+        });
+
+        int frontierSize = 0;
+        double maxOpponentUtility = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < bidSpaceSize; i++) {
+            if (opponentUtility[points[i]] > maxOpponentUtility) {
+                maxOpponentUtility = opponentUtility[points[i]];
+                // Frontier points are packed into the front of the sorted array as they are found
+                points[frontierSize++] = points[i];
+            }
+        }
+
+        // Reverse so the frontier reads from lowest to highest agent utility
+        int[] sortedFrontier = new int[frontierSize];
+        for (int i = 0; i < frontierSize; i++) {
+            sortedFrontier[i] = points[frontierSize - 1 - i];
         }
-        return distance;
+        return sortedFrontier;
     }
 
     /**
@@ -271,6 +555,7 @@ public class NashPointGenerator {
      * @return agent's utility at Nash point
      */
     public double getNashUtility() {
-        return nashPoint.getAgentUtility();
+        NashEstimate nash = latestEstimate.get();
+        return nash == null ? 0 : nash.getAgentUtility();
     }
 }
@@ -0,0 +1,111 @@
+package group14;
+
+import java.util.Arrays;
+
+/**
+ * A set of encoded bids the agent has already offered, with constant time membership checks
+ * Domains small enough are tracked with one bit per bid, and bigger domains with an open addressing hash set
+ * of ordinals which stops growing once it reaches its memory cap
+ */
+public class OfferedBidSet {
+
+    private static final long BITSET_LIMIT = 1L << 26; // Largest domain tracked with a bitset, 8MB of bits
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 20; // Hash table slots, 8MB of ordinals
+
+    private long[] bits; // Used for small domains
+    private long[] table; // Used for big domains
+    private int size;
+
+    /**
+     * A constructor to make an empty set for a domain
+     * @param domainSize number of possible bids in the domain
+     */
+    public OfferedBidSet(long domainSize) {
+        if (domainSize <= BITSET_LIMIT) {
+            bits = new long[(int) ((domainSize + 63) >>> 6)];
+        } else {
+            table = newTable(INITIAL_CAPACITY);
+        }
+    }
+
+    /**
+     * A method to add an encoded bid to the set
+     * Once the hash set is at its memory cap, new bids are no longer recorded
+     * @param ordinal ordinal of the bid
+     */
+    public void add(long ordinal) {
+        if (bits != null) {
+            long mask = 1L << ordinal;
+            int word = (int) (ordinal >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                size++;
+            }
+            return;
+        }
+        // Keep the table at most half full
+        if ((size + 1) * 2 > table.length) {
+            if (table.length >= MAX_CAPACITY) {
+                return;
+            }
+            resize(table.length * 2);
+        }
+        if (insert(table, ordinal)) {
+            size++;
+        }
+    }
+
+    /**
+     * @param ordinal ordinal of the bid
+     * @return true if the bid has been offered
+     */
+    public boolean contains(long ordinal) {
+        if (bits != null) {
+            return (bits[(int) (ordinal >>> 6)] & (1L << ordinal)) != 0;
+        }
+        int slot = OrdinalHash.slot(ordinal, table.length);
+        while (table[slot] != OrdinalHash.EMPTY) {
+            if (table[slot] == ordinal) {
+                return true;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * @return number of different bids in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] resized = newTable(capacity);
+        for (long ordinal : table) {
+            if (ordinal != OrdinalHash.EMPTY) {
+                insert(resized, ordinal);
+            }
+        }
+        table = resized;
+    }
+
+    private static boolean insert(long[] table, long ordinal) {
+        int slot = OrdinalHash.slot(ordinal, table.length);
+        while (table[slot] != OrdinalHash.EMPTY) {
+            if (table[slot] == ordinal) {
+                return false;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        table[slot] = ordinal;
+        return true;
+    }
+
+    private static long[] newTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, OrdinalHash.EMPTY);
+        return table;
+    }
+}
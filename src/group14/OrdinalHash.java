@@ -0,0 +1,23 @@
+package group14;
+
+/**
+ * Hashing of bid ordinals into power of two sized tables, shared by the agent's ordinal keyed tables
+ */
+final class OrdinalHash {
+
+    static final long EMPTY = -1; // Ordinals are never negative so this marks an empty slot
+
+    private OrdinalHash() {
+    }
+
+    /**
+     * @param ordinal ordinal of the bid
+     * @param capacity number of slots in the table, must be a power of two
+     * @return slot of the ordinal
+     */
+    static int slot(long ordinal, int capacity) {
+        // Mix the bits as neighbouring ordinals are common
+        long hash = ordinal * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & (capacity - 1);
+    }
+}
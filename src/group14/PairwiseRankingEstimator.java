@@ -0,0 +1,194 @@
+package group14;
+
+import genius.core.Bid;
+import genius.core.Domain;
+import genius.core.issue.Issue;
+import genius.core.uncertainty.AdditiveUtilitySpaceFactory;
+import genius.core.uncertainty.BidRanking;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An alternative to AgentSmithUtilityEstimator which fits the utility space to a ranking by regression
+ * Each bid is scored as the sum of one parameter per issue value, and the parameters are fitted with stochastic
+ * gradient descent on a pairwise logistic loss, so that each bid in the ranking scores above the bid ranked below it
+ * Bids are held as one-hot features in primitive arrays, so an epoch is linear in the size of the ranking
+ * Fitting stops when the time budget runs out, keeping the parameters which ordered the most pairs correctly
+ */
+public class PairwiseRankingEstimator extends AdditiveUtilitySpaceFactory {
+
+    private static final int MAX_EPOCHS = 200;
+    private static final int BUDGET_CHECK_INTERVAL = 4096; // Pairs trained on between checks of the clock
+
+    private Domain domain;
+    private BidCodec codec;
+    private int[] featureOffset; // Index of the first parameter of each issue
+    private int featureCount;
+    private long timeBudget = 300; // Milliseconds spent fitting
+    private double learningRate = 0.1;
+    private Random random = new Random();
+
+    /**
+     * @param d the domain to estimate the utility space of
+     * @param codec codec for the bids of the domain
+     */
+    public PairwiseRankingEstimator(Domain d, BidCodec codec) {
+        super(d);
+        domain = d;
+        this.codec = codec;
+        featureOffset = new int[codec.getIssueCount()];
+        for (int i = 0; i < codec.getIssueCount(); i++) {
+            featureOffset[i] = featureCount;
+            featureCount += codec.getValueCount(i);
+        }
+    }
+
+    /**
+     * @param timeBudget milliseconds to spend fitting, the best model so far is used once it runs out
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @param learningRate step size of the first epoch, later epochs take smaller steps
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public void estimateUsingBidRanks(BidRanking r) {
+        List<Bid> bids = r.getBidOrder();
+        int issueCount = codec.getIssueCount();
+        int[] features = new int[bids.size() * issueCount];
+        int position = 0;
+        for (Bid b : bids) {
+            for (int i = 0; i < issueCount; i++) {
+                features[position * issueCount + i] = featureOffset[i] + codec.valueIndex(b, i);
+            }
+            position++;
+        }
+        fit(features, bids.size());
+    }
+
+    /**
+     * Estimate the utility space from a ranking of encoded bids, without building any Bid objects
+     * @param ordinals ordinals of the ranked bids, worst bid first
+     * @param size number of ranked bids
+     */
+    public void estimateUsingOrdinalRanking(long[] ordinals, int size) {
+        int issueCount = codec.getIssueCount();
+        int[] features = new int[size * issueCount];
+        for (int position = 0; position < size; position++) {
+            for (int i = 0; i < issueCount; i++) {
+                features[position * issueCount + i] = featureOffset[i] + codec.valueIndex(ordinals[position], i);
+            }
+        }
+        fit(features, size);
+    }
+
+    /**
+     * Fit the parameters to consecutive pairs of the ranking and set the utility space from the best fit
+     * @param features parameter index of each issue value of each ranked bid, bid by bid, worst bid first
+     * @param size number of ranked bids
+     */
+    private void fit(int[] features, int size) {
+        long deadline = System.nanoTime() + timeBudget * 1000000L;
+        int issueCount = codec.getIssueCount();
+        double[] parameters = new double[featureCount];
+        double[] best = new double[featureCount];
+        int bestCorrect = -1;
+
+        // Pair p is bid p ranked below bid p + 1
+        int pairCount = Math.max(size - 1, 0);
+        long[] pairOrder = new long[pairCount];
+        for (int p = 0; p < pairCount; p++) {
+            pairOrder[p] = p;
+        }
+
+        boolean outOfTime = false;
+        for (int epoch = 0; epoch < MAX_EPOCHS && !outOfTime; epoch++) {
+            double rate = learningRate / (1 + epoch);
+            BidSampler.shuffle(pairOrder, random);
+            for (int k = 0; k < pairCount; k++) {
+                int worse = (int) pairOrder[k] * issueCount;
+                int better = worse + issueCount;
+                double margin = 0;
+                for (int i = 0; i < issueCount; i++) {
+                    margin += parameters[features[better + i]] - parameters[features[worse + i]];
+                }
+                // Gradient of log(1 + e^-margin), only the parameters of values the two bids differ in change
+                double step = rate / (1 + Math.exp(margin));
+                for (int i = 0; i < issueCount; i++) {
+                    parameters[features[better + i]] += step;
+                    parameters[features[worse + i]] -= step;
+                }
+                if ((k + 1) % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    outOfTime = true;
+                    break;
+                }
+            }
+
+            int correct = countCorrectPairs(parameters, features, size);
+            if (correct > bestCorrect) {
+                bestCorrect = correct;
+                System.arraycopy(parameters, 0, best, 0, featureCount);
+            }
+            if (correct == pairCount || System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        applyParameters(best);
+    }
+
+    /**
+     * @return number of consecutive pairs of the ranking the parameters score in the right order
+     */
+    private int countCorrectPairs(double[] parameters, int[] features, int size) {
+        int issueCount = codec.getIssueCount();
+        int correct = 0;
+        double previous = 0;
+        for (int position = 0; position < size; position++) {
+            double score = 0;
+            for (int i = 0; i < issueCount; i++) {
+                score += parameters[features[position * issueCount + i]];
+            }
+            if (position > 0 && score > previous) {
+                correct++;
+            }
+            previous = score;
+        }
+        return correct;
+    }
+
+    /**
+     * Turn the fitted parameters into an additive utility space
+     * Each issue's values are shifted so the lowest is zero, and the issue is weighted by the range of its values
+     * @param parameters the fitted parameter of each issue value
+     */
+    private void applyParameters(double[] parameters) {
+        List<Issue> issues = domain.getIssues();
+        for (int i = 0; i < codec.getIssueCount(); i++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                min = Math.min(min, parameters[featureOffset[i] + v]);
+                max = Math.max(max, parameters[featureOffset[i] + v]);
+            }
+            double range = max - min;
+            for (int v = 0; v < codec.getValueCount(i); v++) {
+                // An issue the ranking says nothing about gets equal values and no weight
+                double utility = range > 0 ? parameters[featureOffset[i] + v] - min : 1d;
+                this.setUtility(issues.get(i), codec.getValue(i, v), utility);
+            }
+            getUtilitySpace().setWeight(issues.get(i), range);
+        }
+        this.normalizeWeightsByMaxValues();
+    }
+}
@@ -0,0 +1,107 @@
+package group14;
+
+import java.util.Random;
+
+/**
+ * Bids of the domain sorted by the agent's estimated utility, from best to worst
+ * Similar to Genius's SortedOutcomeSpace but over encoded bids and the compiled utility space, so the bids above
+ * a utility threshold are always a prefix of the index and can be found with a binary search
+ * Domains with more bids than SIZE_LIMIT are indexed by a stratified sample
+ */
+public class SortedBidIndex {
+
+    private static final int SIZE_LIMIT = 1 << 21; // Maximum number of bids held in the index
+
+    private final long[] ordinals; // Bid ordinals in descending order of utility
+    private final double[] utilities; // Utility of each indexed bid, in descending order
+    private final boolean sampled;
+
+    /**
+     * A constructor to build the index from the compiled utility space
+     * @param utilitySpace the compiled utility space for the agent
+     * @param random source of randomness for sampling domains too big to index fully
+     */
+    public SortedBidIndex(CompiledUtilityEvaluator utilitySpace, Random random) {
+        BidCodec codec = utilitySpace.getCodec();
+        int size = (int) Math.min(codec.size(), SIZE_LIMIT);
+        sampled = size < codec.size();
+
+        long[] candidates;
+        if (sampled) {
+            candidates = BidSampler.stratifiedSample(codec.size(), size, random);
+        } else {
+            candidates = new long[size];
+            for (int i = 0; i < size; i++) {
+                candidates[i] = i;
+            }
+        }
+        double[] candidateUtilities = new double[size];
+        for (int i = 0; i < size; i++) {
+            candidateUtilities[i] = utilitySpace.getUtility(candidates[i]);
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Best first, ties in ordinal order
+        IndexSort.sort(order, 0, size, (a, b) -> {
+            int compare = Double.compare(candidateUtilities[b], candidateUtilities[a]);
+            return compare != 0 ? compare : Long.compare(candidates[a], candidates[b]);
+        });
+
+        ordinals = new long[size];
+        utilities = new double[size];
+        for (int i = 0; i < size; i++) {
+            ordinals[i] = candidates[order[i]];
+            utilities[i] = candidateUtilities[order[i]];
+        }
+    }
+
+    /**
+     * A method to count the bids with at least a given utility, which are the first bids of the index
+     * @param threshold the lowest utility to count
+     * @return number of bids with utility greater than or equal to the threshold
+     */
+    public int countAtLeast(double threshold) {
+        int low = 0;
+        int high = utilities.length;
+        // Find the first position with a utility below the threshold
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (utilities[middle] >= threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param position position in the index, 0 being the best bid
+     * @return ordinal of the bid at that position
+     */
+    public long getOrdinal(int position) {
+        return ordinals[position];
+    }
+
+    /**
+     * @param position position in the index, 0 being the best bid
+     * @return utility of the bid at that position
+     */
+    public double getUtility(int position) {
+        return utilities[position];
+    }
+
+    public int size() {
+        return ordinals.length;
+    }
+
+    /**
+     * @return true if the index only holds a sample of the domain
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+}
@@ -0,0 +1,71 @@
+package group14;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache of utilities already worked out for encoded bids, shared by the parts of the agent
+ * It is direct mapped, so each ordinal has one slot and a newer bid simply replaces whatever was there
+ * Opponent utilities are stored with the version of the opponent model they came from, so they are
+ * recomputed once the model has received more bids
+ * Not thread safe - it should only be used by one thread at a time
+ * With bid pipelining the next offer is computed on the pipeline thread, which uses the cache, but the negotiation
+ * thread always waits for that computation to finish before it uses the cache again
+ */
+public class UtilityCache {
+
+    private static final int CAPACITY = 1 << 14; // Slots in each cache, must be a power of two
+
+    private final CompiledUtilityEvaluator agentUtilitySpace;
+    private final long[] ownKeys = new long[CAPACITY];
+    private final double[] ownUtilities = new double[CAPACITY];
+    private final long[] opponentKeys = new long[CAPACITY];
+    private final int[] opponentVersions = new int[CAPACITY];
+    private final double[] opponentUtilities = new double[CAPACITY];
+
+    /**
+     * A constructor to make an empty cache
+     * @param agentUtilitySpace the compiled utility space for the agent
+     */
+    public UtilityCache(CompiledUtilityEvaluator agentUtilitySpace) {
+        this.agentUtilitySpace = agentUtilitySpace;
+        Arrays.fill(ownKeys, OrdinalHash.EMPTY);
+        Arrays.fill(opponentKeys, OrdinalHash.EMPTY);
+    }
+
+    /**
+     * A method to get the agent's estimated utility of an encoded bid
+     * @param ordinal ordinal of the bid
+     * @return estimated utility
+     */
+    public double getOwnUtility(long ordinal) {
+        int slot = OrdinalHash.slot(ordinal, CAPACITY);
+        if (ownKeys[slot] == ordinal) {
+            return ownUtilities[slot];
+        }
+        double utility = agentUtilitySpace.getUtility(ordinal);
+        ownKeys[slot] = ordinal;
+        ownUtilities[slot] = utility;
+        return utility;
+    }
+
+    /**
+     * A method to get the estimated opponent utility of an encoded bid
+     * Snapshots of the opponent model share the version of the model they were taken from,
+     * so the live model and its snapshots can use the same entries
+     * @param opponentModel the opponent model to evaluate with
+     * @param ordinal ordinal of the bid
+     * @return estimated opponent utility
+     */
+    public double getOpponentUtility(AgentSmithOpponentModel opponentModel, long ordinal) {
+        int slot = OrdinalHash.slot(ordinal, CAPACITY);
+        int version = opponentModel.getVersion();
+        if (opponentKeys[slot] == ordinal && opponentVersions[slot] == version) {
+            return opponentUtilities[slot];
+        }
+        double utility = opponentModel.opponentBidUtility(ordinal);
+        opponentKeys[slot] = ordinal;
+        opponentVersions[slot] = version;
+        opponentUtilities[slot] = utility;
+        return utility;
+    }
+}